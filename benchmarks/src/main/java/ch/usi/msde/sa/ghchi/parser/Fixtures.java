@@ -0,0 +1,81 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.stmt.BlockStmt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The inputs of the benchmarks, taken from the {@code scanner/Example*.java} fixtures of the parser.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return The fixture files of a directory, in name order.
+     */
+    static List<Path> files(String directory) throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(directory))) {
+            List<Path> fixtures = files
+                    .filter(file -> file.getFileName().toString().matches("Example.*\\.java"))
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (fixtures.isEmpty()) throw new IOException("No Example*.java fixtures in " + directory);
+            return fixtures;
+        }
+    }
+
+    /**
+     * @return The Javadoc comments of all fixtures, printed the way {@link ParseMethods} passes them on.
+     */
+    static List<String> javadocComments(String directory) throws IOException {
+        List<String> comments = new ArrayList<>();
+        for (CompilationUnit unit : parseAll(directory)) {
+            unit.getAllComments().stream()
+                    .filter(comment -> comment instanceof JavadocComment)
+                    .forEach(comment -> comments.add(comment.toString()));
+        }
+        return comments;
+    }
+
+    /**
+     * @return The method bodies of all fixtures, printed without comments the way {@link ParseMethods} passes them on.
+     */
+    static List<String> methodBodies(String directory) throws IOException {
+        List<String> bodies = new ArrayList<>();
+        for (CompilationUnit unit : parseAll(directory)) {
+            for (MethodDeclaration declaration : unit.findAll(MethodDeclaration.class)) {
+                declaration.getBody().ifPresent(body -> {
+                    body.getAllContainedComments().forEach(Comment::remove);
+                    bodies.add(body.toString());
+                });
+            }
+        }
+        return bodies;
+    }
+
+    private static List<CompilationUnit> parseAll(String directory) throws IOException {
+        List<CompilationUnit> units = new ArrayList<>();
+        for (Path file : files(directory)) {
+            try {
+                units.add(StaticJavaParser.parse(file));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return units;
+    }
+}
@@ -0,0 +1,63 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParseMethods#parseClassMethods} end to end on a single fixture: parsing, visiting, filtering, rendering
+ * and sampling its methods. The fixture is held in memory, so reading it from disk is not part of the operation.
+ * <br>
+ * The files of a quarantine directory can be measured the same way, e.g. with
+ * {@code -p fixtures=/data/quarantine -p fixture=041956b3e84aed6e632aadf541aec9f3}. Files quarantined for their size
+ * are rejected by the triage before they are parsed, unless the limit is raised in the forked JVM as well, e.g. with
+ * {@code -jvmArgsAppend -Dghchi.maxFileBytes=1000000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseClassMethodsBenchmark {
+
+    @Param("scanner")
+    public String fixtures;
+
+    @Param({
+            "ExampleAbstractClass", "ExampleAnnotationClass", "ExampleConcreteClass",
+            "ExampleEnumClass", "ExampleInterfaceClass", "ExampleUtilityClass"
+    })
+    public String fixture;
+
+    private String key;
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        key = fixture + ".java";
+        content = Files.readAllBytes(Path.of(fixtures, key));
+    }
+
+    @Benchmark
+    public List<Pair<String, String>> parseClassMethods() throws IOException {
+        ReservoirSampler<Pair<String, String>> sampler = new ReservoirSampler<>(ParseMethods.max_project_methods, 0);
+        ParseMethods.parseClassMethods(SourceFile.inMemory(key, null, content), sampler);
+        return sampler.getSample();
+    }
+}
@@ -0,0 +1,90 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * The single stages of the {@link StringProcessors} chains. Each stage processes what the stages before it in its
+ * chain produce from the fixtures, and one operation processes every comment or body of the fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringProcessorStageBenchmark {
+
+    private static final Map<String, UnaryOperator<String>> JAVADOC_STAGES = new LinkedHashMap<>();
+    private static final Map<String, UnaryOperator<String>> METHOD_STAGES = new LinkedHashMap<>();
+
+    static {
+        JAVADOC_STAGES.put("REMOVE_PREFORMATTED_TEXT", StringProcessors.REMOVE_PREFORMATTED_TEXT);
+        JAVADOC_STAGES.put("EXTRACT_REFERENCE_CONTENT", StringProcessors.EXTRACT_REFERENCE_CONTENT);
+        JAVADOC_STAGES.put("EXTRACT_LITERAL_CONTENT", StringProcessors.EXTRACT_LITERAL_CONTENT);
+        JAVADOC_STAGES.put("REMOVE_HTML_TAGS", StringProcessors.REMOVE_HTML_TAGS);
+        JAVADOC_STAGES.put("REMOVE_METADATA", StringProcessors.REMOVE_METADATA);
+        JAVADOC_STAGES.put("REMOVE_FORMATTING", StringProcessors.REMOVE_FORMATTING);
+        JAVADOC_STAGES.put("RETAIN_ASCII", StringProcessors.RETAIN_ASCII);
+        JAVADOC_STAGES.put("GET_FIRST_SENTENCE", StringProcessors.GET_FIRST_SENTENCE);
+        JAVADOC_STAGES.put("REMOVE_PUNCTUATION", StringProcessors.REMOVE_PUNCTUATION);
+        JAVADOC_STAGES.put("NORMALIZE_SPACE", StringProcessors.NORMALIZE_SPACE);
+        JAVADOC_STAGES.put("TRIM", StringProcessors.TRIM);
+        JAVADOC_STAGES.put("ADD_SEPARATOR", StringProcessors.ADD_SEPARATOR);
+        METHOD_STAGES.put("METHOD_RETAIN_ASCII", StringProcessors.RETAIN_ASCII);
+        METHOD_STAGES.put("METHOD_NORMALIZE_SPACE", StringProcessors.NORMALIZE_SPACE);
+    }
+
+    @Param("scanner")
+    public String fixtures;
+
+    @Param({
+            "REMOVE_PREFORMATTED_TEXT", "EXTRACT_REFERENCE_CONTENT", "EXTRACT_LITERAL_CONTENT", "REMOVE_HTML_TAGS",
+            "REMOVE_METADATA", "REMOVE_FORMATTING", "RETAIN_ASCII", "GET_FIRST_SENTENCE", "REMOVE_PUNCTUATION",
+            "NORMALIZE_SPACE", "TRIM", "ADD_SEPARATOR", "METHOD_RETAIN_ASCII", "METHOD_NORMALIZE_SPACE"
+    })
+    public String stage;
+
+    private UnaryOperator<String> operator;
+    private List<String> inputs;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean javadoc = JAVADOC_STAGES.containsKey(stage);
+        Map<String, UnaryOperator<String>> chain = javadoc ? JAVADOC_STAGES : METHOD_STAGES;
+        if (!chain.containsKey(stage)) throw new IllegalArgumentException("Unknown stage " + stage);
+        inputs = javadoc ? Fixtures.javadocComments(fixtures) : Fixtures.methodBodies(fixtures);
+        for (Map.Entry<String, UnaryOperator<String>> entry : chain.entrySet()) {
+            if (entry.getKey().equals(stage)) {
+                operator = entry.getValue();
+                break;
+            }
+            List<String> outputs = new ArrayList<>(inputs.size());
+            for (String input : inputs) outputs.add(entry.getValue().apply(input));
+            inputs = outputs;
+        }
+    }
+
+    @Benchmark
+    public void stage(Blackhole blackhole) {
+        for (String input : inputs) blackhole.consume(operator.apply(input));
+    }
+}
@@ -0,0 +1,63 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The complete processing of Javadoc comments and method bodies, as the parser does it and with the stage chains.
+ * One operation processes every comment or body of the fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringProcessorsBenchmark {
+
+    @Param("scanner")
+    public String fixtures;
+
+    private List<String> javadocComments;
+    private List<String> methodBodies;
+
+    @Setup
+    public void setUp() throws IOException {
+        javadocComments = Fixtures.javadocComments(fixtures);
+        methodBodies = Fixtures.methodBodies(fixtures);
+    }
+
+    @Benchmark
+    public void processJavadocString(Blackhole blackhole) {
+        for (String comment : javadocComments) blackhole.consume(StringProcessors.processJavadocString(comment));
+    }
+
+    @Benchmark
+    public void processJavadocStringWithRegexes(Blackhole blackhole) {
+        for (String comment : javadocComments) blackhole.consume(StringProcessors.processJavadocStringWithRegexes(comment));
+    }
+
+    @Benchmark
+    public void processMethodString(Blackhole blackhole) {
+        for (String body : methodBodies) blackhole.consume(StringProcessors.processMethodString(body));
+    }
+
+    @Benchmark
+    public void processMethodStringWithRegexes(Blackhole blackhole) {
+        for (String body : methodBodies) blackhole.consume(StringProcessors.processMethodStringWithRegexes(body));
+    }
+}
@@ -0,0 +1,120 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The Java source files of a source archive, e.g. a GitHub tarball or a {@code -sources.jar}.
+ * <br>
+ * The archive is streamed once from start to end and nothing is extracted to disk.
+ * If the archive starts with a directory entry, as GitHub tarballs do, that directory is treated as the root.
+ * <br>
+ * Whether a build output directory is next to a build file is only known once the whole archive has been read, so
+ * the files below directories of that name are held back until the end.
+ */
+class ArchiveTree implements SourceTree {
+
+    private static final String[] EXTENSIONS = {".zip", ".jar", ".tar", ".tar.gz", ".tgz"};
+
+    private static final int CHUNK_FILES = 256;
+    private static final long CHUNK_BYTES = 8L * 1024 * 1024;
+
+    private final Path archive;
+    private final SourcePathFilter filter;
+
+    ArchiveTree(Path archive, SourcePathFilter filter) {
+        this.archive = archive;
+        this.filter = filter;
+    }
+
+    /**
+     * Tells source archives apart from repository names in the repository list.
+     */
+    static boolean isArchive(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void read(Predicate<String> accept, Consumer<List<SourceFile>> chunks) throws IOException {
+        long visited = 0;
+        long pruned = 0;
+        try (ArchiveInputStream in = open()) {
+            String root = null;
+            List<SourceFile> chunk = new ArrayList<>();
+            long chunkBytes = 0;
+            Set<String> buildRoots = new HashSet<>();
+            List<SourceFile> heldBack = new ArrayList<>();
+            ArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                visited++;
+                String name = entry.getName();
+                if (visited == 1 && entry.isDirectory()) root = name;
+                if (entry.isDirectory() || !in.canReadEntryData(entry)) continue;
+
+                String key = root != null && name.startsWith(root) ? name.substring(root.length()) : name;
+                int slash = key.lastIndexOf('/');
+                if (SourcePathFilter.isBuildFile(key.substring(slash + 1))) buildRoots.add(slash < 0 ? "" : key.substring(0, slash));
+                if (!filter.isJavaFile(name)) continue;
+                if (!filter.accepts(key, directory -> false)) {
+                    pruned++;
+                    continue;
+                }
+                if (!accept.test(key)) continue;
+                byte[] content = in.readAllBytes();
+                SourceFile file = SourceFile.inMemory(key, null, content);
+                if (!filter.accepts(key, directory -> true)) {
+                    heldBack.add(file);
+                    continue;
+                }
+                chunk.add(file);
+                chunkBytes += content.length;
+                if (chunk.size() >= CHUNK_FILES || chunkBytes >= CHUNK_BYTES) {
+                    chunks.accept(chunk);
+                    chunk = new ArrayList<>();
+                    chunkBytes = 0;
+                }
+            }
+            for (SourceFile file : heldBack) {
+                if (filter.accepts(file.getKey(), buildRoots::contains)) chunk.add(file);
+                else pruned++;
+            }
+            if (!chunk.isEmpty()) chunks.accept(chunk);
+        } finally {
+            Counters.add("walk.visited", visited);
+            Counters.add("walk.pruned", pruned);
+        }
+    }
+
+    private ArchiveInputStream open() throws IOException {
+        String name = archive.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), 1 << 16);
+        try {
+            if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) return new TarArchiveInputStream(new GzipCompressorInputStream(in));
+            if (name.endsWith(".tar")) return new TarArchiveInputStream(in);
+            return new ZipArchiveInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+}
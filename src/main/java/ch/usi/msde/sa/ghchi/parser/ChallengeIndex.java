@@ -0,0 +1,179 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The methods of the challenge set written by {@link ParseExample}, so that they are kept out of the CSV file of
+ * {@link ParseMethods}.
+ * <br>
+ * A method is keyed by the 64-bit murmur3 hash of its code with the method name left out, as it is masked in the challenge
+ * inputs, without its Javadoc and without any whitespace, so that the printers of both tools, which lay out code
+ * differently, yield the same key. The keys are kept in a file that is mapped read-only: a Bloom filter that rules out
+ * almost all methods with a few bit lookups, followed by the sorted keys, which are searched to verify a method that
+ * passes the filter.
+ * <pre>
+ * magic | number of keys | number of filter words | filter words | sorted keys
+ * </pre>
+ */
+final class ChallengeIndex {
+
+    private static final String MASK = "<extra_id_0>";
+
+    private static final long MAGIC = 0x6768636869636869L;
+    private static final int HEADER_BYTES = 3 * Long.BYTES;
+    private static final int BITS_PER_KEY = 16;
+    private static final int PROBES = 8;
+    private static final String JAVADOC_SEPARATOR = " <SEP> ";
+    private static final String INPUT_PREFIX = "<SEP> ";
+
+    private final LongBuffer filter;
+    private final LongBuffer keys;
+    private final long mask;
+
+    private ChallengeIndex(LongBuffer filter, LongBuffer keys) {
+        this.filter = filter;
+        this.keys = keys;
+        this.mask = (long) filter.limit() * Long.SIZE - 1;
+    }
+
+    /**
+     * Builds the index of a challenge set.
+     * <br>
+     * Usage: {@code ChallengeIndex challenge_inputs.txt challenge.index}
+     */
+    public static void main(String[] args) throws IOException {
+        int size = build(Path.of(args[0]), Path.of(args[1]));
+        System.out.printf("Indexed %,d challenge methods into %s%n", size, args[1]);
+    }
+
+    /**
+     * Writes the index of the challenge inputs, one masked method per line as written by {@link ParseExample}.
+     *
+     * @return The number of distinct methods.
+     */
+    static int build(Path challengeInputs, Path file) throws IOException {
+        long[] keys;
+        try (BufferedReader reader = Files.newBufferedReader(challengeInputs, StandardCharsets.UTF_8)) {
+            keys = reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .mapToLong(line -> key(MASK, line.startsWith(INPUT_PREFIX) ? line.substring(INPUT_PREFIX.length()) : line))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+        }
+        long filterBits = Long.highestOneBit(Math.max((long) keys.length * BITS_PER_KEY, Long.SIZE) * 2 - 1);
+        long[] filter = new long[(int) (filterBits / Long.SIZE)];
+        for (long key : keys) {
+            for (int probe = 0; probe < PROBES; probe++) {
+                long bit = bit(key, probe, filterBits - 1);
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        ByteBuffer content = ByteBuffer.allocate(HEADER_BYTES + (filter.length + keys.length) * Long.BYTES);
+        content.putLong(MAGIC).putLong(keys.length).putLong(filter.length);
+        content.asLongBuffer().put(filter).put(keys);
+        content.rewind();
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) channel.write(content);
+            channel.force(true);
+        }
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keys.length;
+    }
+
+    static ChallengeIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed
+            ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (content.remaining() < HEADER_BYTES || content.getLong() != MAGIC) {
+                throw new IOException("Not an index of challenge methods: " + file);
+            }
+            long keys = content.getLong();
+            long filterWords = content.getLong();
+            if (content.remaining() != (filterWords + keys) * Long.BYTES) {
+                throw new IOException("Truncated index of challenge methods: " + file);
+            }
+            LongBuffer words = content.asLongBuffer();
+            LongBuffer filter = words.duplicate().limit((int) filterWords).slice();
+            LongBuffer sorted = words.position((int) filterWords).slice();
+            return new ChallengeIndex(filter, sorted);
+        }
+    }
+
+    int size() {
+        return keys.limit();
+    }
+
+    /**
+     * Safe to call from any thread.
+     *
+     * @param name       The name of the method.
+     * @param methodText The method as rendered by {@link ParseMethods}.
+     * @return Whether the method is in the challenge set.
+     */
+    boolean contains(String name, String methodText) {
+        int separator = methodText.indexOf(JAVADOC_SEPARATOR);
+        String code = separator < 0 ? methodText : methodText.substring(separator + JAVADOC_SEPARATOR.length());
+        long key = key(name, code);
+        for (int probe = 0; probe < PROBES; probe++) {
+            long bit = bit(key, probe, mask);
+            if ((filter.get((int) (bit >>> 6)) & 1L << bit) == 0) return false;
+        }
+        if (binarySearch(key)) return true;
+        Counters.increment("challenge.falsePositives");
+        return false;
+    }
+
+    private boolean binarySearch(long key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = keys.get(middle);
+            if (current < key) low = middle + 1;
+            else if (current > key) high = middle - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    /**
+     * Keys the code of a method, starting from its return type, by dropping its name, the last word before the
+     * parameters, and all whitespace.
+     */
+    private static long key(String name, String code) {
+        int parameters = code.indexOf('(');
+        int nameStart = parameters < 0 ? -1 : code.lastIndexOf(name, parameters);
+        StringBuilder stripped = new StringBuilder(code.length());
+        for (int i = 0; i < code.length(); i++) {
+            if (i == nameStart) {
+                i += name.length() - 1;
+                continue;
+            }
+            char c = code.charAt(i);
+            if (!Character.isWhitespace(c)) stripped.append(c);
+        }
+        return Hashing.murmur3_128().hashString(stripped, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * @return The filter bit of a probe, by double hashing.
+     */
+    private static long bit(long key, int probe, long mask) {
+        long mixed = (key + probe * (Long.rotateLeft(key, 32) | 1)) * 0x9E3779B97F4A7C15L;
+        return (mixed ^ mixed >>> 32) & mask;
+    }
+}
@@ -0,0 +1,129 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only record of the repositories whose methods have been committed to the CSV file.
+ * <br>
+ * The first line holds the size of the CSV file when the journal was created and the sampling seed of the run.
+ * Every following line holds a repository, the number of methods written for it, and the size of the CSV file
+ * once they were written. A restarted run skips the journaled repositories, reuses the seed, and truncates the
+ * CSV file to the last journaled size, dropping rows of repositories that were not completed.
+ * <pre>
+ * # start 0 seed -4962768465676381896
+ * doocs/advanced-java	1000	498112
+ * spring-projects/spring-boot	1000	1093775
+ * </pre>
+ */
+class CompletionJournal implements Closeable {
+
+    private static final String HEADER_PREFIX = "# start ";
+    private static final String SEED_SEPARATOR = " seed ";
+
+    private final Set<String> completed = new HashSet<>();
+    private final long seed;
+    private long committedOffset;
+    private final FileOutputStream output;
+    private final Writer writer;
+
+    private CompletionJournal(Path journal, Path csv, long seed) throws IOException {
+        String content = Files.exists(journal) ? Files.readString(journal, StandardCharsets.UTF_8) : "";
+        // a line cut short by a crash is not part of the journal
+        content = content.substring(0, content.lastIndexOf('\n') + 1);
+        truncate(journal, content.getBytes(StandardCharsets.UTF_8).length);
+        boolean exists = !content.isEmpty();
+        if (exists) {
+            List<String> lines = content.lines().collect(Collectors.toList());
+            String header = lines.get(0);
+            if (!header.startsWith(HEADER_PREFIX)) throw new IOException("Not a completion journal: " + journal);
+            String[] start = header.substring(HEADER_PREFIX.length()).split(SEED_SEPARATOR);
+            this.committedOffset = Long.parseLong(start[0]);
+            this.seed = Long.parseLong(start[1]);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t");
+                completed.add(fields[0]);
+                this.committedOffset = Long.parseLong(fields[2]);
+            }
+        } else {
+            this.committedOffset = Files.exists(csv) ? Files.size(csv) : 0;
+            this.seed = seed;
+        }
+        truncate(csv, committedOffset);
+
+        this.output = new FileOutputStream(journal.toFile(), true);
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (!exists) {
+            writer.write(HEADER_PREFIX + committedOffset + SEED_SEPARATOR + this.seed + "\n");
+            sync();
+        }
+    }
+
+    /**
+     * Opens the journal of a CSV file, and brings the CSV file back to its last consistent state.
+     *
+     * @param seed The seed of the run, used only if the journal does not exist yet.
+     */
+    static CompletionJournal open(Path csv, long seed) throws IOException {
+        Path journal = csv.resolveSibling(csv.getFileName() + ".journal");
+        return new CompletionJournal(journal, csv, seed);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        if (!Files.exists(file) && size == 0) return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() < size) {
+                throw new IOException(String.format("%s is shorter than its journal (%d < %d bytes)", file, channel.size(), size));
+            }
+            channel.truncate(size);
+        }
+    }
+
+    boolean isCompleted(String repositoryName) {
+        return completed.contains(repositoryName);
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The size of the CSV file after the last journaled repository.
+     */
+    long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * Records a repository whose methods have been written up to {@code offset}.
+     * Entries only become durable with the next {@link #sync()}.
+     */
+    void append(String repositoryName, int methods, long offset) throws IOException {
+        writer.write(repositoryName + "\t" + methods + "\t" + offset + "\n");
+        completed.add(repositoryName);
+        committedOffset = offset;
+    }
+
+    void sync() throws IOException {
+        writer.flush();
+        output.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,34 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run-wide counters, shared by all workers and printed at the end of a run.
+ */
+class Counters {
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+    private Counters() {
+    }
+
+    static void add(String name, long delta) {
+        COUNTERS.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    static void increment(String name) {
+        add(name, 1);
+    }
+
+    static long get(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    static void print(PrintStream out) {
+        COUNTERS.forEach((name, counter) -> out.printf("%-40s %,d%n", name, counter.sum()));
+    }
+}
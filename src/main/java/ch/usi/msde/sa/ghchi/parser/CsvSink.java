@@ -0,0 +1,257 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends method records to a single CSV file that stays open for the whole run.
+ * <br>
+ * Producers hand over batches of records through a bounded queue. A dedicated writer thread prints them into a
+ * large buffer and commits the buffer to disk once enough records are pending or the flush interval has passed,
+ * so many batches share a single write and sync. Each commit is then recorded in the {@link CompletionJournal}.
+ * With a {@link MethodDeduplicator}, the writer drops the methods that were already written before printing a batch,
+ * and with a {@link NearDuplicateIndex} also the methods that are similar to one that was, so the first repository
+ * in list order that contains a method keeps it. With {@link SeenFiles}, the files parsed for a batch are recorded as
+ * seen once the batch is committed.
+ * Closing the sink commits everything that was handed over.
+ */
+class CsvSink implements Closeable {
+
+    private static final Batch END_OF_INPUT = new Batch(null, Collections.emptyList(), null);
+
+    private final FileOutputStream output;
+    private final BufferedOutputStream buffer;
+    private final OffsetTrackingStream tracker;
+    private final CSVPrinter printer;
+    private final CompletionJournal journal;
+    private final MethodDeduplicator deduplicator;
+    private final NearDuplicateIndex nearDuplicates;
+    private final SeenFiles seenFiles;
+    private final BlockingQueue<Batch> queue;
+    private final int flushRecords;
+    private final long flushIntervalNanos;
+    private final Thread writer;
+
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+
+    /**
+     * @param filePath            The path of the CSV file, which is appended to.
+     * @param journal             The journal in which committed batches are recorded.
+     * @param deduplicator        The methods written so far, or {@code null} to write duplicates too.
+     * @param nearDuplicates      The methods written by this run, or {@code null} to write near duplicates too.
+     * @param seenFiles           The files parsed so far, or {@code null} if files are parsed again.
+     * @param bufferSize          The size of the write buffer, in bytes.
+     * @param queueCapacity       The number of batches that can be waiting to be written.
+     * @param flushRecords        The number of pending records that triggers a commit.
+     * @param flushIntervalMillis The longest time records may stay pending.
+     */
+    CsvSink(String filePath, CompletionJournal journal, MethodDeduplicator deduplicator,
+            NearDuplicateIndex nearDuplicates, SeenFiles seenFiles, int bufferSize, int queueCapacity,
+            int flushRecords, long flushIntervalMillis) throws IOException {
+        this.output = new FileOutputStream(filePath, true);
+        this.buffer = new BufferedOutputStream(output, bufferSize);
+        this.tracker = new OffsetTrackingStream(buffer, output.getChannel().size());
+        this.printer = new CSVPrinter(new OutputStreamWriter(tracker, StandardCharsets.UTF_8), CSVFormat.DEFAULT);
+        this.journal = journal;
+        this.deduplicator = deduplicator;
+        this.nearDuplicates = nearDuplicates;
+        this.seenFiles = seenFiles;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushRecords = flushRecords;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writer = new Thread(this::writeLoop, "csv-sink");
+        this.writer.start();
+    }
+
+    /**
+     * Queues the records of a repository, blocking while the queue is full.
+     * The records of a batch are written contiguously, and batches are written in the order they were queued.
+     *
+     * @param signatures The {@link NearDuplicateIndex} signatures of the records, if near duplicates are dropped.
+     */
+    void write(String repositoryName, List<Pair<String, String>> records, List<int[]> signatures) throws IOException, InterruptedException {
+        checkFailure();
+        if (closed) throw new IOException("The sink has been closed");
+        queue.put(new Batch(repositoryName, records, signatures));
+    }
+
+    /**
+     * Commits everything that was queued and stops the writer.
+     * Batches queued concurrently with closing the sink may be dropped, a resumed run processes them again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            // the writer stops draining the queue if it fails
+            while (writer.isAlive() && !queue.offer(END_OF_INPUT, 100, TimeUnit.MILLISECONDS)) ;
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+        try {
+            printer.close();
+            journal.close();
+            if (deduplicator != null) deduplicator.close();
+            if (seenFiles != null) seenFiles.close();
+        } catch (IOException e) {
+            if (failure == null) failure = e;
+        }
+        checkFailure();
+    }
+
+    private void writeLoop() {
+        List<Batch> pending = new ArrayList<>();
+        int pendingRecords = 0;
+        long pendingSince = 0;
+        try {
+            while (true) {
+                Batch batch = pending.isEmpty()
+                        ? queue.take()
+                        : queue.poll(Math.max(pendingSince + flushIntervalNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if (batch == END_OF_INPUT) break;
+                if (batch != null) {
+                    long start = System.nanoTime();
+                    if (pending.isEmpty()) pendingSince = start;
+                    if (deduplicator != null || nearDuplicates != null) {
+                        batch.records = deduplicate(batch);
+                        long deduplicated = System.nanoTime();
+                        Counters.add("time.dedup.nanos", deduplicated - start);
+                        start = deduplicated;
+                    }
+                    for (Pair<String, String> record : batch.records) printer.printRecord(record.getKey(), record.getValue());
+                    // pushes the encoded chars into the buffer, without writing it out
+                    printer.flush();
+                    Counters.add("time.write.nanos", System.nanoTime() - start);
+                    batch.offset = tracker.getOffset();
+                    pending.add(batch);
+                    pendingRecords += batch.records.size();
+                }
+                if (!pending.isEmpty() && (pendingRecords >= flushRecords || System.nanoTime() - pendingSince >= flushIntervalNanos)) {
+                    commit(pending);
+                    pendingRecords = 0;
+                }
+            }
+            commit(pending);
+        } catch (IOException e) {
+            failure = e;
+            // make room for producers that are blocked on a full queue, they fail on their next write
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Batch> batches) throws IOException {
+        if (batches.isEmpty()) return;
+        long start = System.nanoTime();
+        printer.flush();
+        buffer.flush();
+        output.getFD().sync();
+        for (Batch batch : batches) journal.append(batch.repositoryName, batch.records.size(), batch.offset);
+        journal.sync();
+        if (deduplicator != null) deduplicator.checkpoint(journal.getCommittedOffset());
+        if (seenFiles != null) {
+            for (Batch batch : batches) seenFiles.commit(batch.repositoryName);
+            seenFiles.checkpoint(journal.getCommittedOffset());
+        }
+        batches.clear();
+        Counters.increment("sink.commits");
+        Counters.add("time.commit.nanos", System.nanoTime() - start);
+    }
+
+    /**
+     * @return The records of the batch that are neither duplicates nor near duplicates of records written before.
+     */
+    private List<Pair<String, String>> deduplicate(Batch batch) throws IOException {
+        List<Pair<String, String>> unique = new ArrayList<>(batch.records.size());
+        for (int i = 0; i < batch.records.size(); i++) {
+            Pair<String, String> record = batch.records.get(i);
+            long hash = 0;
+            if (deduplicator != null) {
+                hash = MethodDeduplicator.hash(record.getValue());
+                if (deduplicator.isWritten(hash)) {
+                    Counters.increment("dedup.duplicates");
+                    continue;
+                }
+            }
+            if (nearDuplicates != null && !nearDuplicates.add(batch.signatures.get(i))) {
+                Counters.increment("dedup.nearDuplicates");
+                continue;
+            }
+            if (deduplicator != null) deduplicator.add(hash);
+            unique.add(record);
+        }
+        Counters.add("dedup.methods", batch.records.size());
+        return unique;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) throw failure;
+    }
+
+    private static final class Batch {
+        final String repositoryName;
+        List<Pair<String, String>> records;
+        final List<int[]> signatures;
+        long offset;
+
+        Batch(String repositoryName, List<Pair<String, String>> records, List<int[]> signatures) {
+            this.repositoryName = repositoryName;
+            this.records = records;
+            this.signatures = signatures;
+        }
+    }
+
+    /**
+     * Counts the bytes written to the file, and keeps flushes of the encoder from writing out the buffer.
+     */
+    private static final class OffsetTrackingStream extends FilterOutputStream {
+        private long offset;
+
+        OffsetTrackingStream(OutputStream out, long offset) {
+            super(out);
+            this.offset = offset;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            offset++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            offset += len;
+        }
+
+        @Override
+        public void flush() {
+            // the buffer is only written out by a commit
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The Java source files of a checked out repository.
+ * All files are handed over in a single chunk, and each one is only read by the worker that parses it.
+ */
+class DirectoryTree implements SourceTree {
+
+    private final Path root;
+    private final SourcePathFilter filter;
+
+    DirectoryTree(Path root, SourcePathFilter filter) {
+        this.root = root;
+        this.filter = filter;
+    }
+
+    @Override
+    public void read(Predicate<String> accept, Consumer<List<SourceFile>> chunks) throws IOException {
+        JavaFileWalker walker = new JavaFileWalker(filter);
+        List<Path> javaFiles;
+        try {
+            javaFiles = walker.walk(root);
+        } finally {
+            Counters.add("walk.visited", walker.getVisited());
+            Counters.add("walk.pruned", walker.getPruned());
+        }
+        List<SourceFile> sourceFiles = new ArrayList<>(javaFiles.size());
+        for (Path javaFile : javaFiles) {
+            String key = FilenameUtils.separatorsToUnix(root.relativize(javaFile).toString());
+            if (accept.test(key)) sourceFiles.add(SourceFile.onDisk(key, javaFile));
+        }
+        chunks.accept(sourceFiles);
+    }
+}
@@ -0,0 +1,304 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Triple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the methods extracted from every source file, by the git object id of its content, in a directory that
+ * outlives the run, so that files that did not change since an earlier run are not parsed again.
+ * <br>
+ * The methods of a file are appended to the current segment file, and an {@link OffHeapLongMap} maps the object id
+ * to the segment and offset of the entry. Every entry repeats the full object id and a checksum of its methods, so an
+ * entry that was not completely written, or an index that points to the wrong place, makes for a miss rather than
+ * for wrong methods. Once the segments exceed their budget, the oldest one is deleted. Entries that are hit in the
+ * older half of the segments are copied to the current one, so that the files that keep being crawled are kept.
+ * <br>
+ * The segments are kept in a subdirectory named after a version key, which hashes the classes that parse, filter and
+ * render methods, with their nested classes and the parser library, and the options that change their result. A run with a different version starts over with an empty
+ * cache and deletes the others.
+ * <pre>
+ * object id (20 bytes) | length | CRC-32 | methods
+ * </pre>
+ */
+class ExtractionCache implements Closeable {
+
+    private static final String INDEX = "index";
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final int ID_BYTES = 20;
+    private static final int HEADER_BYTES = ID_BYTES + 2 * Integer.BYTES;
+    private static final int OFFSET_BITS = 40;
+
+    private final Path directory;
+    private final long budget;
+    private final long segmentBytes;
+    private final OffHeapLongMap index;
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+
+    private volatile int oldestSegment;
+    private volatile int currentSegment;
+    private long currentSize;
+    private long totalSize;
+
+    private ExtractionCache(Path directory, long budget, List<Integer> existing) throws IOException {
+        this.directory = directory;
+        this.budget = budget;
+        this.segmentBytes = Math.max(budget / 16, 1024 * 1024);
+        for (int segment : existing) {
+            segments.put(segment, FileChannel.open(segmentPath(segment), StandardOpenOption.READ, StandardOpenOption.WRITE));
+            totalSize += segments.get(segment).size();
+        }
+        this.oldestSegment = existing.isEmpty() ? 1 : existing.get(0);
+        this.currentSegment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+        this.currentSize = currentSegment == 0 ? 0 : segments.get(currentSegment).size();
+        if (currentSegment == 0) startSegment();
+        this.index = OffHeapLongMap.open(directory.resolve(INDEX), location -> segmentOf(location) >= oldestSegment);
+    }
+
+    /**
+     * Opens the cache of the given version, deleting the caches of other versions.
+     *
+     * @param budget The size the segments are trimmed to, in bytes.
+     */
+    static ExtractionCache open(Path directory, String version, long budget) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> versions = Files.list(directory)) {
+            for (Path other : (Iterable<Path>) versions::iterator) {
+                if (!other.getFileName().toString().equals(version) && Files.isDirectory(other)) {
+                    System.out.println("Deleting the extraction cache of version " + other.getFileName());
+                    FileUtils.deleteDirectory(other.toFile());
+                }
+            }
+        }
+        Path versionDirectory = directory.resolve(version);
+        Files.createDirectories(versionDirectory);
+        List<Integer> existing;
+        try (Stream<Path> files = Files.list(versionDirectory)) {
+            existing = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return new ExtractionCache(versionDirectory, budget, existing);
+    }
+
+    /**
+     * Derives a version key from the code of the given classes and from a description of the options.
+     * <br>
+     * The class file of a class is hashed along with those of its nested and anonymous classes, which hold much of
+     * the logic. A class that is loaded from a jar is hashed by the whole jar instead, so that upgrading a library,
+     * e.g. the parser and its printers, also changes the key.
+     */
+    static String version(String options, Class<?>... classes) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher().putString(options, StandardCharsets.UTF_8);
+        for (Class<?> type : classes) {
+            CodeSource source = type.getProtectionDomain().getCodeSource();
+            if (source == null) throw new IOException("Could not find the class files of " + type.getName());
+            Path location;
+            try {
+                location = Path.of(source.getLocation().toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Could not find the class files of " + type.getName(), e);
+            }
+            if (!Files.isDirectory(location)) {
+                hasher.putBytes(Files.readAllBytes(location));
+                continue;
+            }
+            Path packageDirectory = location.resolve(type.getPackageName().replace('.', '/'));
+            String outer = type.getSimpleName();
+            List<Path> classFiles;
+            try (Stream<Path> files = Files.list(packageDirectory)) {
+                classFiles = files.filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.equals(outer + ".class") || name.startsWith(outer + "$") && name.endsWith(".class");
+                }).sorted().collect(Collectors.toList());
+            }
+            for (Path classFile : classFiles) {
+                hasher.putString(classFile.getFileName().toString(), StandardCharsets.UTF_8);
+                hasher.putBytes(Files.readAllBytes(classFile));
+            }
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    /**
+     * @return The location, name and text of every method of the file, or {@code null} if it is not cached.
+     */
+    List<Triple<String, String, String>> get(String contentId) {
+        byte[] id = BaseEncoding.base16().lowerCase().decode(contentId);
+        long location;
+        synchronized (this) {
+            location = index.get(key(id));
+        }
+        byte[] payload = location == OffHeapLongMap.ABSENT ? null : read(location, id);
+        if (payload == null) {
+            Counters.increment("cache.misses");
+            return null;
+        }
+        Counters.increment("cache.hits");
+        int segment = segmentOf(location);
+        if (segment < oldestSegment + (currentSegment - oldestSegment) / 2) {
+            Counters.increment("cache.refreshed");
+            append(id, payload);
+        }
+        try {
+            return decode(payload);
+        } catch (IOException e) {
+            // the checksum matched, so only a different layout of the methods could get here
+            return null;
+        }
+    }
+
+    /**
+     * Stores the location, name and text of every method of the file.
+     */
+    void put(String contentId, List<Triple<String, String, String>> methods) {
+        byte[] id = BaseEncoding.base16().lowerCase().decode(contentId);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(methods.size());
+            for (Triple<String, String, String> method : methods) {
+                writeString(out, method.getLeft());
+                writeString(out, method.getMiddle());
+                writeString(out, method.getRight());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(id, bytes.toByteArray());
+        Counters.increment("cache.stored");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileChannel channel : segments.values()) channel.close();
+        index.close();
+    }
+
+    private byte[] read(long location, byte[] id) {
+        FileChannel channel = segments.get(segmentOf(location));
+        if (channel == null) return null;
+        long offset = location & ((1L << OFFSET_BITS) - 1);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, offset);
+            byte[] storedId = new byte[ID_BYTES];
+            header.flip().get(storedId);
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (!Arrays.equals(storedId, id) || length < 0 || offset + HEADER_BYTES + length > channel.size()) return null;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, offset + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            return (int) crc.getValue() == checksum ? payload.array() : null;
+        } catch (IOException e) {
+            // e.g. the segment was evicted in the meantime
+            return null;
+        }
+    }
+
+    private synchronized void append(byte[] id, byte[] payload) {
+        try {
+            if (currentSize > 0 && currentSize + HEADER_BYTES + payload.length > segmentBytes) startSegment();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer entry = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            entry.put(id).putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            FileChannel channel = segments.get(currentSegment);
+            long offset = currentSize;
+            while (entry.hasRemaining()) currentSize += channel.write(entry, currentSize);
+            totalSize += entry.limit();
+            index.put(key(id), (long) currentSegment << OFFSET_BITS | offset);
+        } catch (IOException e) {
+            System.err.printf("Could not cache the methods of %s: %s%n", BaseEncoding.base16().lowerCase().encode(id), e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a new segment, and deletes the oldest segments while the cache is over its budget.
+     */
+    private void startSegment() throws IOException {
+        currentSegment++;
+        segments.put(currentSegment, FileChannel.open(segmentPath(currentSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        currentSize = segments.get(currentSegment).size();
+        while (totalSize > budget && oldestSegment < currentSegment) {
+            FileChannel evicted = segments.remove(oldestSegment);
+            if (evicted != null) {
+                totalSize -= evicted.size();
+                evicted.close();
+            }
+            Files.deleteIfExists(segmentPath(oldestSegment));
+            oldestSegment++;
+            Counters.increment("cache.evictedSegments");
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%08d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    private static long key(byte[] id) {
+        long key = ByteBuffer.wrap(id).getLong();
+        // 0 marks an empty slot of the index
+        return key == 0 ? 1 : key;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Truncated entry");
+        }
+    }
+
+    private static List<Triple<String, String, String>> decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = in.readInt();
+            List<Triple<String, String, String>> methods = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) methods.add(Triple.of(readString(in), readString(in), readString(in)));
+            return methods;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,234 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The wall-clock budget of the file a parse worker is working on.
+ * <br>
+ * With a deadline, the work on a file runs on a thread of its own, and the parse worker waits for it until shortly
+ * after the deadline. The work checks the deadline itself while the parser reads its input, and between the members
+ * and the methods of the file, and gives up at the first check past the deadline. A file the parser gets stuck in
+ * without reading on is abandoned by the parse worker instead, which moves on to the next file. The parser can not
+ * be interrupted, so the abandoned thread keeps running until it reaches a check, if ever, and a new thread takes
+ * its place. An abandoned file does not hand on any results, even if its thread finishes later on.
+ * <br>
+ * Abandoned threads that are still running take up a core each, so once more than {@code ghchi.maxAbandonedThreads}
+ * of them are stuck, every file fails with {@link Exhausted} instead, which stops the run.
+ */
+final class FileBudget {
+
+    /**
+     * How long the parse worker gives the work on a file past its deadline to give up by itself.
+     */
+    private static final long ABANDON_GRACE_MILLIS = 1000;
+
+    static int maxAbandonedThreads = Integer.getInteger("ghchi.maxAbandonedThreads", 16);
+
+    private static final ThreadLocal<FileBudget> CURRENT = new ThreadLocal<>();
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final AtomicInteger STUCK = new AtomicInteger();
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "file-worker-" + THREADS.incrementAndGet());
+        // abandoned threads must not keep the run from ending
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long start = System.nanoTime();
+    private final long deadlineNanos;
+    private boolean abandoned = false;
+    private boolean committed = false;
+    private boolean finished = false;
+
+    private FileBudget(long deadlineMillis) {
+        this.deadlineNanos = deadlineMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * The work on a single file.
+     */
+    interface Work {
+        void run() throws IOException;
+    }
+
+    /**
+     * Does the work on a file under its budget.
+     *
+     * @param deadlineMillis The wall-clock budget, or 0 for none, in which case the work runs on the calling thread.
+     * @throws Exceeded  If the file was abandoned.
+     * @throws Exhausted If too many abandoned threads are stuck to go on.
+     */
+    static void run(String repositoryName, SourceFile file, long deadlineMillis, Work work) throws IOException {
+        FileBudget budget = new FileBudget(deadlineMillis);
+        if (deadlineMillis <= 0) {
+            budget.runHere(work);
+            return;
+        }
+        int stuck = STUCK.get();
+        if (stuck > maxAbandonedThreads) throw new Exhausted(stuck);
+        Future<?> future = WORKERS.submit(() -> {
+            try {
+                budget.runHere(work);
+            } finally {
+                budget.finish();
+            }
+            return null;
+        });
+        try {
+            try {
+                future.get(deadlineMillis + ABANDON_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (budget.abandon()) {
+                    future.cancel(true);
+                    System.err.printf("Abandoned %s of %s after %d ms, its thread is stuck%n",
+                            file.getKey(), repositoryName, budget.getElapsedMillis());
+                    Counters.increment("budget.abandonedThreads");
+                    throw new Exceeded("deadline", budget.getElapsedMillis());
+                }
+                // the work is handing on its results, which is not abandoned halfway
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            budget.abandon();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing " + file.getKey() + " of " + repositoryName);
+        }
+    }
+
+    private void runHere(Work work) throws IOException {
+        CURRENT.set(this);
+        try {
+            work.run();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * @return Whether the file was abandoned, which it can not be once it started to hand on its results.
+     */
+    private synchronized boolean abandon() {
+        if (committed) return false;
+        if (!abandoned && !finished) STUCK.incrementAndGet();
+        abandoned = true;
+        return true;
+    }
+
+    private synchronized void finish() {
+        finished = true;
+        if (abandoned) STUCK.decrementAndGet();
+    }
+
+    long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private boolean isOverdue() {
+        return System.nanoTime() - start > deadlineNanos;
+    }
+
+    /**
+     * Abandons the file of the current thread if it is past its deadline.
+     */
+    static void checkDeadline() {
+        FileBudget budget = CURRENT.get();
+        if (budget != null && budget.isOverdue()) throw new Exceeded("deadline", budget.getElapsedMillis());
+    }
+
+    /**
+     * Hands on the results of the file of the current thread, unless it was abandoned.
+     * Once the results are being handed on, the file is no longer abandoned.
+     */
+    static void commit(Runnable results) {
+        FileBudget budget = CURRENT.get();
+        if (budget != null) {
+            synchronized (budget) {
+                if (budget.abandoned) throw new Exceeded("deadline", budget.getElapsedMillis());
+                budget.committed = true;
+            }
+        }
+        results.run();
+    }
+
+    /**
+     * Abandons the file of the current thread for exceeding some other budget.
+     */
+    static Exceeded exceeded(String reason) {
+        FileBudget budget = CURRENT.get();
+        return new Exceeded(reason, budget == null ? 0 : budget.getElapsedMillis());
+    }
+
+    /**
+     * @return The stream, checking the deadline whenever the parser reads from it.
+     */
+    static InputStream guard(InputStream in) {
+        if (CURRENT.get() == null) return in;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                checkDeadline();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                checkDeadline();
+                return super.read(buffer, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Thrown in the parse worker to abandon its file.
+     */
+    static final class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+        private final long elapsedMillis;
+
+        private Exceeded(String reason, long elapsedMillis) {
+            super(reason + " budget exceeded after " + elapsedMillis + " ms", null, false, false);
+            this.reason = reason;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        String getReason() {
+            return reason;
+        }
+
+        long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    /**
+     * Thrown in the parse worker once more than {@code ghchi.maxAbandonedThreads} abandoned threads are stuck.
+     * Unlike {@link Exceeded}, it is not confined to a file.
+     */
+    static final class Exhausted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Exhausted(int stuck) {
+            super(stuck + " abandoned threads are stuck in the parser, more than ghchi.maxAbandonedThreads="
+                    + maxAbandonedThreads + "; the files they are stuck in are listed above");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs git commands without going through a shell.
+ * <br>
+ * Commands that run to completion are supervised: their output is drained while they run, so that they never block
+ * on a full pipe, they are killed together with their child processes once they exceed their timeout, and at most
+ * {@code ghchi.gitProcesses} of them run at the same time. Long-lived processes started by {@link #start} are
+ * bounded by the number of workers that use them instead.
+ */
+class Git {
+
+    static String executable = System.getProperty("ghchi.git", "git");
+    static int maxProcesses = Integer.getInteger("ghchi.gitProcesses", 8);
+    static long timeoutMillis = Long.getLong("ghchi.gitTimeoutMillis", 15L * 60 * 1000);
+
+    private static final Semaphore PROCESSES = new Semaphore(maxProcesses, true);
+    private static final ExecutorService DRAINERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "git-output");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Git() {
+    }
+
+    /**
+     * The outcome of a command that ran to completion or was killed.
+     */
+    static final class Result {
+        private final List<String> args;
+        private final int status;
+        private final String output;
+        private final long durationMillis;
+        private final boolean timedOut;
+
+        private Result(List<String> args, int status, String output, long durationMillis, boolean timedOut) {
+            this.args = args;
+            this.status = status;
+            this.output = output;
+            this.durationMillis = durationMillis;
+            this.timedOut = timedOut;
+        }
+
+        /**
+         * @return The combined standard and error output of the command.
+         */
+        String getOutput() {
+            return output;
+        }
+
+        /**
+         * @throws IOException If the command did not succeed, describing how it ended.
+         */
+        Result check() throws IOException {
+            if (timedOut) {
+                throw new IOException(String.format("git %s timed out after %d ms: %s", args.get(0), durationMillis, output.trim()));
+            }
+            if (status != 0) {
+                throw new IOException(String.format("git %s exited with status %d after %d ms: %s",
+                        args.get(0), status, durationMillis, output.trim()));
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Runs git in {@code directory} and waits for it to finish, within the default timeout.
+     *
+     * @return The combined standard and error output of the command.
+     * @throws IOException If git can not be started, exits with a non-zero status or times out.
+     */
+    static String run(File directory, String... args) throws IOException, InterruptedException {
+        return execute(directory, timeoutMillis, args).check().getOutput();
+    }
+
+    /**
+     * Runs git in {@code directory} and waits for it to finish or to be killed after {@code timeoutMillis}.
+     *
+     * @throws IOException If git can not be started.
+     */
+    static Result execute(File directory, long timeoutMillis, String... args) throws IOException, InterruptedException {
+        PROCESSES.acquire();
+        try {
+            long start = System.nanoTime();
+            Process process = builder(directory, args).redirectErrorStream(true).start();
+            process.getOutputStream().close();
+            Future<byte[]> output = DRAINERS.submit(() -> drain(process.getInputStream()));
+            boolean exited;
+            try {
+                exited = process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                kill(process);
+                throw e;
+            }
+            if (!exited) kill(process);
+            int status = process.waitFor();
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Counters.increment("git.processes");
+            if (!exited) Counters.increment("git.timeouts");
+            else if (status != 0) Counters.increment("git.failures");
+            return new Result(Arrays.asList(args), status, collect(output), durationMillis, !exited);
+        } finally {
+            PROCESSES.release();
+        }
+    }
+
+    /**
+     * Starts a long-lived git process in {@code directory}, for commands that are fed through their standard input.
+     * The error output of the process is discarded.
+     */
+    static Process start(File directory, String... args) throws IOException {
+        return builder(directory, args).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+    }
+
+    private static ProcessBuilder builder(File directory, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(executable);
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(directory);
+        // fail instead of waiting for credentials
+        builder.environment().put("GIT_TERMINAL_PROMPT", "0");
+        return builder;
+    }
+
+    /**
+     * Kills a process and the processes it started, e.g. the transport helpers of a clone.
+     */
+    private static void kill(Process process) {
+        // the children are collected first, they are no longer descendants once their parent is gone
+        List<ProcessHandle> descendants = new ArrayList<>();
+        process.descendants().forEach(descendants::add);
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static byte[] drain(InputStream in) throws IOException {
+        try (in) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            in.transferTo(output);
+            return output.toByteArray();
+        }
+    }
+
+    private static String collect(Future<byte[]> output) throws IOException, InterruptedException {
+        try {
+            // a killed process may have left children holding the pipe, which are gone shortly after
+            return new String(output.get(10, TimeUnit.SECONDS), StandardCharsets.UTF_8);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read the output of git", e.getCause());
+        } catch (TimeoutException e) {
+            output.cancel(true);
+            return "";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The Java source files of a git revision, read straight from the object database without a working tree.
+ * <br>
+ * The tree is listed with {@code git ls-tree}, and the blobs are streamed out of a single
+ * {@code git cat-file --batch} process, so the repository may be bare.
+ */
+class GitBlobTree implements SourceTree {
+
+    private static final int CHUNK_FILES = 256;
+    private static final long CHUNK_BYTES = 8L * 1024 * 1024;
+
+    private final File gitDir;
+    private final String revision;
+    private final SourcePathFilter filter;
+
+    GitBlobTree(File gitDir, String revision, SourcePathFilter filter) {
+        this.gitDir = gitDir;
+        this.revision = revision;
+        this.filter = filter;
+    }
+
+    @Override
+    public void read(Predicate<String> accept, Consumer<List<SourceFile>> chunks) throws IOException, InterruptedException {
+        List<String[]> blobs = listBlobs(accept);
+        if (blobs.isEmpty()) return;
+
+        Process process = Git.start(gitDir, "cat-file", "--batch");
+        Thread feeder = new Thread(() -> feed(process.getOutputStream(), blobs), "cat-file-feeder");
+        feeder.start();
+        try (InputStream in = new BufferedInputStream(process.getInputStream(), 1 << 16)) {
+            List<SourceFile> chunk = new ArrayList<>();
+            long chunkBytes = 0;
+            for (String[] blob : blobs) {
+                String[] header = readLine(in).split(" ");
+                if (header.length < 3) {
+                    // the object is missing, e.g. from a shallow or damaged clone
+                    continue;
+                }
+                int size = Integer.parseInt(header[2]);
+                byte[] content = in.readNBytes(size);
+                if (content.length < size || in.read() != '\n') throw new EOFException("Truncated blob " + blob[0]);
+                chunk.add(SourceFile.inMemory(blob[1], blob[0], content));
+                chunkBytes += size;
+                if (chunk.size() >= CHUNK_FILES || chunkBytes >= CHUNK_BYTES) {
+                    chunks.accept(chunk);
+                    chunk = new ArrayList<>();
+                    chunkBytes = 0;
+                }
+            }
+            if (!chunk.isEmpty()) chunks.accept(chunk);
+        } finally {
+            process.destroy();
+            feeder.join();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * @return The object id and path of every accepted Java file of the revision, in path order.
+     */
+    private List<String[]> listBlobs(Predicate<String> accept) throws IOException, InterruptedException {
+        String listing = Git.run(gitDir, "ls-tree", "-r", "-z", "--full-tree", revision);
+        List<String[]> files = new ArrayList<>();
+        Set<String> buildRoots = new HashSet<>();
+        long visited = 0;
+        long pruned = 0;
+        for (String entry : listing.split("\0")) {
+            if (entry.isEmpty()) continue;
+            visited++;
+            // <mode> SP <type> SP <object> TAB <path>
+            int tab = entry.indexOf('\t');
+            String[] meta = entry.substring(0, tab).split(" ");
+            String path = entry.substring(tab + 1);
+            boolean regularFile = meta[1].equals("blob") && !meta[0].equals("120000");
+            if (!regularFile) continue;
+            int slash = path.lastIndexOf('/');
+            if (SourcePathFilter.isBuildFile(path.substring(slash + 1))) buildRoots.add(slash < 0 ? "" : path.substring(0, slash));
+            if (filter.isJavaFile(path)) files.add(new String[]{meta[2], path});
+        }
+        // build files may be listed after the build output next to them
+        List<String[]> blobs = new ArrayList<>();
+        for (String[] file : files) {
+            if (!filter.accepts(file[1], buildRoots::contains)) pruned++;
+            else if (accept.test(file[1])) blobs.add(file);
+        }
+        Counters.add("walk.visited", visited);
+        Counters.add("walk.pruned", pruned);
+        return blobs;
+    }
+
+    private static void feed(OutputStream stdin, List<String[]> blobs) {
+        try (OutputStream out = new BufferedOutputStream(stdin)) {
+            for (String[] blob : blobs) out.write((blob[0] + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ignored) {
+            // the reader gave up, and destroyed the process
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new EOFException("cat-file ended early");
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,85 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the Java source files of a directory tree.
+ * <br>
+ * Excluded directories, and build output directories next to a build file, are pruned as a whole before they are
+ * entered, and symbolic links are never followed, so links cannot lead the walk into a loop.
+ */
+class JavaFileWalker extends SimpleFileVisitor<Path> {
+
+    private final SourcePathFilter filter;
+
+    private final List<Path> javaFiles = new ArrayList<>();
+    private Path root;
+    private long visited = 0;
+    private long pruned = 0;
+
+    JavaFileWalker(SourcePathFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Walks the tree below {@code root}, which itself is never pruned.
+     *
+     * @return The Java files found, in path order.
+     */
+    List<Path> walk(Path root) throws IOException {
+        this.root = root;
+        if (Files.isDirectory(root)) Files.walkFileTree(root, this);
+        Collections.sort(javaFiles);
+        return javaFiles;
+    }
+
+    long getVisited() {
+        return visited;
+    }
+
+    long getPruned() {
+        return pruned;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        visited++;
+        if (!dir.equals(root) && isExcluded(dir)) {
+            pruned++;
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    private boolean isExcluded(Path dir) {
+        String name = dir.getFileName().toString();
+        if (filter.isExcludedDirectory(name)) return true;
+        return filter.isBuildOutputDirectory(name)
+                && SourcePathFilter.BUILD_FILES.stream().anyMatch(buildFile -> Files.isRegularFile(dir.resolveSibling(buildFile)));
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        visited++;
+        String name = file.getFileName().toString();
+        if (attrs.isRegularFile() && filter.isJavaFile(name)) {
+            if (filter.isExcludedFile(name)) pruned++;
+            else javaFiles.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        // ignore entries that can not be read
+        return FileVisitResult.CONTINUE;
+    }
+}
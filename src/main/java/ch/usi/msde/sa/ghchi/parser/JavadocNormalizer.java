@@ -0,0 +1,429 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass equivalent of the chain of regex stages that {@link StringProcessors} applies to Javadoc comments.
+ * <br>
+ * Each regex stage is a small state machine that pulls chars from the stage before it, looks ahead only as far as
+ * its pattern needs to decide on a match, and replaces matches exactly like {@link String#replaceAll} does: leftmost
+ * first, with the same alternatives and group contents the regex engine would pick. The stages after the metadata
+ * split only map single chars, and are folded into the loop that builds the result, which stops pulling at the end
+ * of the first sentence. The rest of a comment is therefore never scanned, and no intermediate strings are built.
+ * <br>
+ * Instances are reused and not thread safe, use {@link #get()}.
+ */
+final class JavadocNormalizer {
+
+    private static final ThreadLocal<JavadocNormalizer> INSTANCE = ThreadLocal.withInitial(JavadocNormalizer::new);
+
+    private static final String SEPARATOR = " <SEP> ";
+
+    private final TextSource text = new TextSource();
+    private final Stage preformattedText = new PreformattedTextStage(new Lookahead(text));
+    private final Stage referenceContent = new ReferenceContentStage(new Lookahead(preformattedText));
+    private final Stage literalContent = new LiteralContentStage(new Lookahead(referenceContent));
+    private final Stage htmlTags = new HtmlTagStage(new Lookahead(literalContent));
+    private final Stage metadata = new MetadataStage(new Lookahead(htmlTags));
+    private final StringBuilder result = new StringBuilder();
+
+    private JavadocNormalizer() {
+    }
+
+    static JavadocNormalizer get() {
+        return INSTANCE.get();
+    }
+
+    /**
+     * @param comment A Javadoc comment, as printed by JavaParser.
+     * @return The same as {@link StringProcessors#processJavadocStringWithRegexes(String)}.
+     */
+    String normalize(String comment) {
+        // the chain's splits behave differently on text that does not start like a Javadoc comment
+        if (!comment.startsWith("/**")) return StringProcessors.processJavadocStringWithRegexes(comment);
+
+        text.reset(comment);
+        preformattedText.reset();
+        referenceContent.reset();
+        literalContent.reset();
+        htmlTags.reset();
+        metadata.reset();
+        result.setLength(0);
+
+        // formatting stars and whitespace become separators, punctuation and non-ASCII chars disappear,
+        // and runs of separators are collapsed and trimmed
+        boolean separate = false;
+        for (int c = metadata.next(); c >= 0; c = metadata.next()) {
+            if (isAlphanumeric(c)) {
+                if (separate && result.length() > 0) result.append(' ');
+                separate = false;
+                result.append((char) c);
+            } else if (isSpace(c) || c == '*') {
+                separate = true;
+            } else if (c == '.' || c == '!' || c == '?') {
+                break;
+            }
+        }
+        return result.length() > 0 ? result.append(SEPARATOR).toString() : null;
+    }
+
+    /**
+     * {@code \s} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * {@code \w} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWordChar(int c) {
+        return isAlphanumeric(c) || c == '_';
+    }
+
+    private static boolean isAlphanumeric(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * The chars {@code .} of {@link java.util.regex.Pattern} does not match, or the end of the text.
+     */
+    private static boolean isLineEnd(int c) {
+        return c < 0 || c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private interface CharSource {
+        /**
+         * @return The next char, or -1 at the end of the text.
+         */
+        int next();
+    }
+
+    private static final class TextSource implements CharSource {
+        private String text;
+        private int position;
+
+        void reset(String text) {
+            this.text = text;
+            this.position = 0;
+        }
+
+        @Override
+        public int next() {
+            return position < text.length() ? text.charAt(position++) : -1;
+        }
+    }
+
+    /**
+     * Buffers the chars pulled from a source, so that a stage can look ahead of its current position.
+     */
+    private static final class Lookahead {
+        private final CharSource source;
+        private char[] buffer = new char[256];
+        private int start = 0;
+        private int end = 0;
+        private boolean exhausted = false;
+
+        Lookahead(CharSource source) {
+            this.source = source;
+        }
+
+        void reset() {
+            start = 0;
+            end = 0;
+            exhausted = false;
+        }
+
+        /**
+         * @return The char {@code offset} chars ahead of the current position, or -1 past the end of the text.
+         */
+        int peek(int offset) {
+            while (end - start <= offset) {
+                if (exhausted) return -1;
+                int c = source.next();
+                if (c < 0) {
+                    exhausted = true;
+                    return -1;
+                }
+                if (end == buffer.length) {
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, end - start);
+                        end -= start;
+                        start = 0;
+                    } else {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+                buffer[end++] = (char) c;
+            }
+            return buffer[start + offset];
+        }
+
+        boolean startsWith(int offset, String prefix) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (peek(offset + i) != prefix.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return The offset of the first {@code c} in {@code [from, to)}, or -1.
+         */
+        int indexOf(char c, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int next = peek(i);
+                if (next < 0) return -1;
+                if (next == c) return i;
+            }
+            return -1;
+        }
+
+        int indexOf(String target, int from) {
+            for (int i = from; peek(i + target.length() - 1) >= 0; i++) {
+                if (startsWith(i, target)) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return The offset just past the word chars starting at {@code from}.
+         */
+        int wordEnd(int from) {
+            int i = from;
+            while (isWordChar(peek(i))) i++;
+            return i;
+        }
+
+        /**
+         * @return The offset of the first line terminator at or after {@code from}, or of the end of the text.
+         */
+        int lineEnd(int from) {
+            int i = from;
+            while (!isLineEnd(peek(i))) i++;
+            return i;
+        }
+
+        void skip(int count) {
+            start += count;
+        }
+
+        void copy(int from, int to, StringBuilder target) {
+            target.append(buffer, start + from, to - from);
+        }
+    }
+
+    /**
+     * A {@code replaceAll} stage: at each position it either replaces a match, or passes a single char through.
+     */
+    private abstract static class Stage implements CharSource {
+        /**
+         * Returned by {@link #step()} when it queued a replacement instead of returning a char.
+         */
+        static final int REPLACED = -2;
+
+        final Lookahead in;
+        private final StringBuilder replacement = new StringBuilder();
+        private int replacementPosition = 0;
+
+        Stage(Lookahead in) {
+            this.in = in;
+        }
+
+        void reset() {
+            in.reset();
+            replacement.setLength(0);
+            replacementPosition = 0;
+        }
+
+        @Override
+        public final int next() {
+            while (true) {
+                if (replacementPosition < replacement.length()) return replacement.charAt(replacementPosition++);
+                int c = step();
+                if (c != REPLACED) return c;
+            }
+        }
+
+        /**
+         * Tries to match at the current position.
+         *
+         * @return The next char, -1 at the end of the text, or {@link #REPLACED}.
+         */
+        abstract int step();
+
+        /**
+         * Passes the char at the current position through.
+         */
+        final int pass() {
+            int c = in.peek(0);
+            if (c >= 0) in.skip(1);
+            return c;
+        }
+
+        /**
+         * Replaces a match of {@code length} chars with a space.
+         */
+        final int replaceWithSpace(int length) {
+            resetReplacement();
+            replacement.append(' ');
+            in.skip(length);
+            return REPLACED;
+        }
+
+        /**
+         * Replaces a match of {@code length} chars with the group {@code [groupStart, groupEnd)} of the match.
+         */
+        final int replaceWithGroup(int length, int groupStart, int groupEnd) {
+            resetReplacement();
+            in.copy(groupStart, groupEnd, replacement);
+            in.skip(length);
+            return REPLACED;
+        }
+
+        private void resetReplacement() {
+            replacement.setLength(0);
+            replacementPosition = 0;
+        }
+    }
+
+    /**
+     * {@code (?:\s\*\s)*<pre>[\s\S]*?</pre>} replaced with a space.
+     */
+    private static final class PreformattedTextStage extends Stage {
+
+        PreformattedTextStage(Lookahead in) {
+            super(in);
+        }
+
+        @Override
+        int step() {
+            int c = in.peek(0);
+            if (c == '<' || isSpace(c)) {
+                // the repetition can only give back whole " * " groups, none of which starts with '<'
+                int tag = 0;
+                while (isSpace(in.peek(tag)) && in.peek(tag + 1) == '*' && isSpace(in.peek(tag + 2))) tag += 3;
+                if (in.startsWith(tag, "<pre>")) {
+                    int close = in.indexOf("</pre>", tag + 5);
+                    if (close >= 0) return replaceWithSpace(close + 6);
+                }
+            }
+            return pass();
+        }
+    }
+
+    /**
+     * {@code \{@(?:value|link(?:plain)?)\s(?:.*?#)?(\w+).*?}} replaced with the group.
+     */
+    private static final class ReferenceContentStage extends Stage {
+
+        ReferenceContentStage(Lookahead in) {
+            super(in);
+        }
+
+        @Override
+        int step() {
+            if (in.peek(0) == '{' && in.peek(1) == '@') {
+                int keywordEnd = in.startsWith(2, "value") ? 7
+                        : in.startsWith(2, "linkplain") ? 11
+                        : in.startsWith(2, "link") ? 6
+                        : -1;
+                if (keywordEnd > 0 && isSpace(in.peek(keywordEnd))) {
+                    int from = keywordEnd + 1;
+                    int lineEnd = in.lineEnd(from);
+                    // the optional group is tried first, the lazy quantifier stops at the first '#' followed by
+                    // a word; if no '}' follows that word, no later '#' can be followed by one either
+                    for (int hash = in.indexOf('#', from, lineEnd); hash >= 0; hash = in.indexOf('#', hash + 1, lineEnd)) {
+                        if (!isWordChar(in.peek(hash + 1))) continue;
+                        int wordEnd = in.wordEnd(hash + 1);
+                        int close = in.indexOf('}', wordEnd, lineEnd);
+                        if (close >= 0) return replaceWithGroup(close + 1, hash + 1, wordEnd);
+                        break;
+                    }
+                    if (isWordChar(in.peek(from))) {
+                        int wordEnd = in.wordEnd(from);
+                        int close = in.indexOf('}', wordEnd, lineEnd);
+                        if (close >= 0) return replaceWithGroup(close + 1, from, wordEnd);
+                    }
+                }
+            }
+            return pass();
+        }
+    }
+
+    /**
+     * {@code \{@(?:code|literal|serial(?:Data|Field)?|docRoot|inheritDoc)\s?([^}]*)}} replaced with the group.
+     */
+    private static final class LiteralContentStage extends Stage {
+
+        private static final String[] TAGS = {"code", "literal", "serialData", "serialField", "serial", "docRoot", "inheritDoc"};
+
+        LiteralContentStage(Lookahead in) {
+            super(in);
+        }
+
+        @Override
+        int step() {
+            if (in.peek(0) == '{' && in.peek(1) == '@') {
+                for (String tag : TAGS) {
+                    if (!in.startsWith(2, tag)) continue;
+                    int tagEnd = 2 + tag.length();
+                    int from = isSpace(in.peek(tagEnd)) ? tagEnd + 1 : tagEnd;
+                    int close = in.indexOf('}', tagEnd, Integer.MAX_VALUE);
+                    if (close >= 0) return replaceWithGroup(close + 1, from, close);
+                    break;
+                }
+            }
+            return pass();
+        }
+    }
+
+    /**
+     * {@code <[^>]*>} replaced with a space.
+     */
+    private static final class HtmlTagStage extends Stage {
+
+        HtmlTagStage(Lookahead in) {
+            super(in);
+        }
+
+        @Override
+        int step() {
+            if (in.peek(0) == '<') {
+                int close = in.indexOf('>', 1, Integer.MAX_VALUE);
+                if (close >= 0) return replaceWithSpace(close + 1);
+            }
+            return pass();
+        }
+    }
+
+    /**
+     * The text before the first match of {@code \*\s*@.*}.
+     */
+    private static final class MetadataStage extends Stage {
+        private boolean ended = false;
+
+        MetadataStage(Lookahead in) {
+            super(in);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            ended = false;
+        }
+
+        @Override
+        int step() {
+            if (ended) return -1;
+            if (in.peek(0) == '*') {
+                int at = 1;
+                while (isSpace(in.peek(at))) at++;
+                if (in.peek(at) == '@') {
+                    ended = true;
+                    return -1;
+                }
+            }
+            return pass();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.comments.JavadocComment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Differential check of {@link JavadocNormalizer} against the chain of regex stages it replaces.
+ * <br>
+ * The corpus consists of every Javadoc comment in the given source directories and archives, plus comments
+ * assembled at random from the fragments the regex stages react to. Every mismatch is printed, and the exit
+ * status is non-zero if there is any.
+ * <pre>
+ * java -cp ... ch.usi.msde.sa.ghchi.parser.JavadocNormalizerCheck [-random count] [-seed seed] path...
+ * </pre>
+ */
+class JavadocNormalizerCheck {
+
+    private static final String[] FRAGMENTS = {
+            "/**", "*/", "*", " * ", "\n", "\r\n", "\n * ", " ", "\t", "\u000B", "\f", "\u0085", "\u2028",
+            "word", "Word", "x1", "_", ".", "!", "?", ",", "/", "#", "{", "}", "@", "<", ">", "\u00e9", "\ud83d\ude00",
+            "<pre>", "</pre>", "<p>", "<b>", "</b>", "<a href=\"x.html\">", "</a>",
+            "{@link ", "{@link\n", "{@linkplain ", "{@value ", "{@link Foo}", "{@link #bar}", "{@link Foo#bar(int)}",
+            "{@code ", "{@code}", "{@literal ", "{@serial ", "{@serialData ", "{@serialField ", "{@docRoot}",
+            "{@inheritDoc}", "{@codex ", "@param x ", "@return ", " * @throws ", "*@", "e.g. ", "i.e.",
+    };
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int randomComments = 100_000;
+        long seed = 0;
+        List<String> comments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-random")) randomComments = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed")) seed = Long.parseLong(args[++i]);
+            else collectComments(Path.of(args[i]), comments);
+        }
+        System.out.println("Javadoc comments collected: " + comments.size());
+
+        Random random = new Random(seed);
+        for (int i = 0; i < randomComments; i++) comments.add(randomComment(random));
+
+        long mismatches = 0;
+        long regexNanos = 0;
+        long normalizerNanos = 0;
+        for (String comment : comments) {
+            long start = System.nanoTime();
+            String expected = StringProcessors.processJavadocStringWithRegexes(comment);
+            long middle = System.nanoTime();
+            String actual = StringProcessors.processJavadocString(comment);
+            long end = System.nanoTime();
+            regexNanos += middle - start;
+            normalizerNanos += end - middle;
+            if (!Objects.equals(expected, actual)) {
+                mismatches++;
+                System.out.printf("Mismatch for %s%n  regex chain: %s%n  normalizer:  %s%n",
+                        escape(comment), escape(expected), escape(actual));
+            }
+        }
+        System.out.printf("Compared %,d comments, %,d mismatches%n", comments.size(), mismatches);
+        System.out.printf("Regex chain %,d ms, normalizer %,d ms%n", regexNanos / 1_000_000, normalizerNanos / 1_000_000);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static void collectComments(Path path, List<String> comments) throws IOException, InterruptedException {
+        SourcePathFilter everything = new SourcePathFilter("$^", "$^", "$^");
+        SourceTree tree = Files.isDirectory(path) ? new DirectoryTree(path, everything) : new ArchiveTree(path, everything);
+        JavaParser parser = new JavaParser();
+        tree.read(key -> true, chunk -> {
+            for (SourceFile sourceFile : chunk) {
+                try (InputStream in = sourceFile.openStream()) {
+                    ParseResult<CompilationUnit> result = parser.parse(in);
+                    result.getResult().ifPresent(unit -> unit.getAllComments().stream()
+                            .filter(comment -> comment instanceof JavadocComment)
+                            .forEach(comment -> comments.add(comment.toString())));
+                } catch (IOException e) {
+                    // ignore files that can not be read
+                }
+            }
+        });
+    }
+
+    private static String randomComment(Random random) {
+        StringBuilder comment = new StringBuilder("/**");
+        int fragments = random.nextInt(24);
+        for (int i = 0; i < fragments; i++) comment.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        return comment.append(random.nextBoolean() ? "\n */\n" : "*/").toString();
+    }
+
+    private static String escape(String text) {
+        if (text == null) return "null";
+        return '"' + text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + '"';
+    }
+}
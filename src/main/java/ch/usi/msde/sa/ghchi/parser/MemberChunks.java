@@ -0,0 +1,241 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A source file split into the members of its top-level classes and interfaces by matching braces, so that the
+ * members can be parsed one at a time.
+ * <br>
+ * A member ends with a semicolon, or with the brace that closes its body unless it is a field whose initializer
+ * contains braces. Comments and literals are skipped. Files that can not be split this way, i.e. with top-level
+ * enums, records or annotation types, unicode escapes or unbalanced braces, are not split at all.
+ * <br>
+ * What remains of the file without its members, the skeleton, still holds the package, the imports and the type
+ * headers. Parsing the skeleton and every member on its own therefore fails wherever parsing the whole file would.
+ */
+class MemberChunks {
+
+    private final String skeleton;
+    private final List<Member> members;
+
+    private MemberChunks(String skeleton, List<Member> members) {
+        this.skeleton = skeleton;
+        this.members = members;
+    }
+
+    String getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * @return The members in the order of the file.
+     */
+    List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * A member, with the comments and whitespace before it, wrapped in a type of the same kind as the type it is
+     * declared in.
+     */
+    static final class Member {
+        private final String prefix;
+        private final String text;
+        private final int line;
+        private final int column;
+
+        private Member(String prefix, String text, int line, int column) {
+            this.prefix = prefix;
+            this.text = text;
+            this.line = line;
+            this.column = column;
+        }
+
+        String getSource() {
+            return prefix + text + "}";
+        }
+
+        /**
+         * Moves a node parsed from the source of the member to where it is in the file.
+         */
+        void relocate(Node node) {
+            node.getRange().ifPresent(range -> node.setRange(new Range(relocate(range.begin), relocate(range.end))));
+        }
+
+        private Position relocate(Position position) {
+            if (position.line == 1) return new Position(line, column + position.column - 1 - prefix.length());
+            return new Position(line + position.line - 1, position.column);
+        }
+    }
+
+    /**
+     * @return The file split into members, or {@code null} if it can not be split.
+     */
+    static MemberChunks split(String source) {
+        if (source.contains("\\u") || source.startsWith("\uFEFF")) return null;
+        StringBuilder skeleton = new StringBuilder();
+        List<Member> members = new ArrayList<>();
+        LineCounter lines = new LineCounter(source);
+        int length = source.length();
+        int depth = 0;
+        int parentheses = 0;
+        String prefix = null;
+        char previous = 0;
+        int skeletonStart = 0;
+        int memberStart = 0;
+        boolean memberStarted = false;
+        boolean initializer = false;
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            char next = i + 1 < length ? source.charAt(i + 1) : 0;
+            if (c == '/' && next == '/') {
+                while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') i++;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                int end = source.indexOf("*/", i + 2);
+                if (end < 0) return null;
+                i = end + 2;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                i = skipLiteral(source, i);
+                if (i < 0) return null;
+                memberStarted = true;
+                previous = c;
+                continue;
+            }
+            if (depth == 0) {
+                if (Character.isJavaIdentifierStart(c)) {
+                    int end = i + 1;
+                    while (end < length && Character.isJavaIdentifierPart(source.charAt(end))) end++;
+                    if (parentheses == 0 && previous != '.') {
+                        String word = source.substring(i, end);
+                        if (word.equals("enum") || word.equals("record")) return null;
+                        if (word.equals("class") || word.equals("interface")) {
+                            // an annotation type
+                            if (previous == '@') return null;
+                            prefix = word + " Member {";
+                        }
+                    }
+                    previous = source.charAt(end - 1);
+                    i = end;
+                    continue;
+                }
+                if (c == '(') parentheses++;
+                else if (c == ')') parentheses--;
+                else if (c == '}') return null;
+                else if (c == '{' && parentheses == 0) {
+                    if (prefix == null) return null;
+                    depth = 1;
+                    memberStart = i + 1;
+                    memberStarted = false;
+                    initializer = false;
+                }
+                previous = c;
+                i++;
+                continue;
+            }
+            boolean memberEnds = false;
+            if (c == '(') {
+                parentheses++;
+            } else if (c == ')') {
+                parentheses--;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    // the end of the type
+                    if (memberStarted || parentheses != 0) return null;
+                    prefix = null;
+                } else if (depth == 1 && parentheses == 0 && !initializer) {
+                    memberEnds = true;
+                }
+            } else if (depth == 1 && parentheses == 0 && c == ';') {
+                // or just a semicolon between members
+                memberEnds = memberStarted;
+                if (!memberStarted) memberStart = i + 1;
+            } else if (depth == 1 && parentheses == 0 && c == '=') {
+                initializer = true;
+            }
+            previous = c;
+            i++;
+            if (memberEnds) {
+                skeleton.append(source, skeletonStart, memberStart);
+                skeletonStart = i;
+                lines.advance(memberStart);
+                members.add(new Member(prefix, source.substring(memberStart, i), lines.line, memberStart - lines.lineStart + 1));
+                memberStart = i;
+                memberStarted = false;
+                initializer = false;
+            } else {
+                memberStarted = depth > 0 && (c != ';' || depth > 1 || parentheses > 0);
+            }
+        }
+        if (depth != 0 || parentheses != 0) return null;
+        skeleton.append(source, skeletonStart, length);
+        return new MemberChunks(skeleton.toString(), members);
+    }
+
+    /**
+     * Skips a string, character or text block literal.
+     *
+     * @return The index after the literal, or -1 if it is not terminated.
+     */
+    private static int skipLiteral(String source, int from) {
+        char quote = source.charAt(from);
+        boolean textBlock = source.startsWith("\"\"\"", from);
+        int i = from + (textBlock ? 3 : 1);
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (textBlock) {
+                if (source.startsWith("\"\"\"", i)) return i + 3;
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return -1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts lines like the parser does, from the start of the file up to increasing offsets.
+     */
+    private static final class LineCounter {
+        private final String source;
+        private int offset = 0;
+        int line = 1;
+        int lineStart = 0;
+
+        LineCounter(String source) {
+            this.source = source;
+        }
+
+        void advance(int to) {
+            for (; offset < to; offset++) {
+                char c = source.charAt(offset);
+                if (c == '\n' || c == '\r' && (offset + 1 == source.length() || source.charAt(offset + 1) != '\n')) {
+                    line++;
+                    lineStart = offset + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.hash.Hashing;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The methods whose text was already written to the CSV file, by this run or by an earlier one, so that the sink can
+ * drop their copies.
+ * <br>
+ * Methods are keyed by the 64-bit murmur3 hash of their rendered text, which is free of comments and annotations
+ * and has its whitespace normalized, so copies that only differ in those count as duplicates too. The hashes are kept
+ * in an {@link OffHeapLongSet} next to the CSV file, checkpointed with the size of the CSV file at every commit.
+ * A set that is not in sync with the journal, e.g. after a crash between a commit and its checkpoint, is rebuilt
+ * from the CSV file.
+ */
+class MethodDeduplicator implements Closeable {
+
+    private static final long INITIAL_CAPACITY = 1 << 20;
+
+    private final OffHeapLongSet hashes;
+
+    private MethodDeduplicator(OffHeapLongSet hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * Opens the set of methods written to a CSV file, which must have been brought back to its journaled size.
+     *
+     * @param committedOffset The size of the CSV file after the last journaled repository.
+     */
+    static MethodDeduplicator open(Path csv, long committedOffset) throws IOException {
+        Path file = csv.resolveSibling(csv.getFileName() + ".methods");
+        OffHeapLongSet hashes = OffHeapLongSet.open(file, INITIAL_CAPACITY);
+        if (hashes.getCheckpoint() != committedOffset) {
+            hashes.clear();
+            if (committedOffset > 0) {
+                System.out.printf("Rebuilding %s from %s%n", file, csv);
+                try (Reader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                    for (CSVRecord record : CSVFormat.DEFAULT.parse(reader)) hashes.add(hash(record.get(1)));
+                }
+            }
+            hashes.checkpoint(committedOffset);
+        }
+        return new MethodDeduplicator(hashes);
+    }
+
+    boolean isWritten(long hash) {
+        return hashes.contains(hash);
+    }
+
+    /**
+     * Records a method that is about to be written.
+     */
+    void add(long hash) throws IOException {
+        hashes.add(hash);
+    }
+
+    /**
+     * Records that the methods added so far have been committed, up to {@code offset} of the CSV file.
+     */
+    void checkpoint(long offset) {
+        hashes.checkpoint(offset);
+    }
+
+    long size() {
+        return hashes.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        hashes.close();
+    }
+
+    /**
+     * @return The key of a method, given its rendered text.
+     */
+    static long hash(String methodText) {
+        long hash = Hashing.murmur3_128().hashString(methodText, StandardCharsets.UTF_8).asLong();
+        // 0 marks an empty slot of the set
+        return hash == 0 ? 1 : hash;
+    }
+}
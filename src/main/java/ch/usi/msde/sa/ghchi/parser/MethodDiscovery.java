@@ -0,0 +1,142 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.AnnotationMemberDeclaration;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.CompactConstructorDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.expr.LiteralExpr;
+import com.github.javaparser.ast.expr.Name;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Finds the method declarations of a compilation unit or member without visiting every node of it.
+ * <br>
+ * Methods are members of type declarations, and code can only contain type declarations as anonymous or local
+ * classes. Code is therefore walked directly through its child nodes, leaving out names, types, literals and
+ * comments, and not at all if nested methods are not collected. A method is found after the methods nested in it.
+ */
+class MethodDiscovery extends VoidVisitorAdapter<Void> {
+
+    private final boolean nested;
+    private final Consumer<MethodDeclaration> action;
+
+    private MethodDiscovery(boolean nested, Consumer<MethodDeclaration> action) {
+        this.nested = nested;
+        this.action = action;
+    }
+
+    /**
+     * @param nested Whether to find the methods of anonymous and local classes too. The methods of member types
+     *               and of enum constant bodies are always found.
+     */
+    static void forEachMethod(Node node, boolean nested, Consumer<MethodDeclaration> action) {
+        node.accept(new MethodDiscovery(nested, action), null);
+    }
+
+    @Override
+    public void visit(CompilationUnit unit, Void arg) {
+        unit.getTypes().forEach(type -> type.accept(this, arg));
+    }
+
+    @Override
+    public void visit(ClassOrInterfaceDeclaration declaration, Void arg) {
+        visitMembers(declaration.getMembers());
+    }
+
+    @Override
+    public void visit(EnumDeclaration declaration, Void arg) {
+        declaration.getEntries().forEach(entry -> entry.accept(this, arg));
+        visitMembers(declaration.getMembers());
+    }
+
+    @Override
+    public void visit(RecordDeclaration declaration, Void arg) {
+        visitMembers(declaration.getMembers());
+    }
+
+    @Override
+    public void visit(AnnotationDeclaration declaration, Void arg) {
+        visitMembers(declaration.getMembers());
+    }
+
+    @Override
+    public void visit(EnumConstantDeclaration declaration, Void arg) {
+        declaration.getArguments().forEach(this::visitCode);
+        visitMembers(declaration.getClassBody());
+    }
+
+    @Override
+    public void visit(MethodDeclaration declaration, Void arg) {
+        declaration.getBody().ifPresent(this::visitCode);
+        action.accept(declaration);
+    }
+
+    @Override
+    public void visit(ConstructorDeclaration declaration, Void arg) {
+        visitCode(declaration.getBody());
+    }
+
+    @Override
+    public void visit(CompactConstructorDeclaration declaration, Void arg) {
+        visitCode(declaration.getBody());
+    }
+
+    @Override
+    public void visit(InitializerDeclaration declaration, Void arg) {
+        visitCode(declaration.getBody());
+    }
+
+    @Override
+    public void visit(FieldDeclaration declaration, Void arg) {
+        for (VariableDeclarator variable : declaration.getVariables()) {
+            variable.getInitializer().ifPresent(this::visitCode);
+        }
+    }
+
+    @Override
+    public void visit(AnnotationMemberDeclaration declaration, Void arg) {
+        // default values are constants
+    }
+
+    private void visitMembers(Iterable<? extends BodyDeclaration<?>> members) {
+        for (BodyDeclaration<?> member : members) member.accept(this, null);
+    }
+
+    /**
+     * Walks a body or an expression down to the type declarations within it, which are handled above.
+     */
+    private void visitCode(Node code) {
+        if (!nested) return;
+        List<Node> children = code.getChildNodes();
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            // local classes, and the members of anonymous classes
+            if (child instanceof BodyDeclaration) child.accept(this, null);
+            else if (mayContainCode(child)) visitCode(child);
+        }
+    }
+
+    private static boolean mayContainCode(Node node) {
+        return !(node instanceof NameExpr || node instanceof SimpleName || node instanceof Type
+                || node instanceof LiteralExpr || node instanceof Name || node instanceof Comment || node instanceof Modifier);
+    }
+}
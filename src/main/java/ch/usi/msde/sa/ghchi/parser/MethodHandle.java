@@ -0,0 +1,24 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+/**
+ * Lightweight reference to a method in a source file, used to sample methods before rendering them.
+ * It only holds the keys that the second phase looks the method up by, not any part of the syntax tree.
+ */
+class MethodHandle {
+
+    private final String fileKey;
+    private final String key;
+
+    MethodHandle(String fileKey, String key) {
+        this.fileKey = fileKey;
+        this.key = key;
+    }
+
+    String getFileKey() {
+        return fileKey;
+    }
+
+    String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,226 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a bare, shallow mirror of every repository in a cache directory that outlives the run.
+ * <br>
+ * A mirror is only fetched again once it is older than the refresh interval, and the fetch is incremental.
+ * Repositories are checked out as detached worktrees of their mirror. Whenever a mirror is no longer in use and the cache
+ * is over its budget, the least recently used mirrors that are not checked out are evicted.
+ */
+class MirrorCache {
+
+    /**
+     * The branch of each mirror that tracks the {@code HEAD} of its remote.
+     */
+    static final String BRANCH = "crawl";
+    private static final String FETCHED_MARKER = "crawl-fetched";
+    private static final String USED_MARKER = "crawl-used";
+
+    private final Path cacheDir;
+    private final String remoteUrl;
+    private final long budget;
+    private final long refreshMillis;
+
+    private final Map<Path, Long> sizes = new HashMap<>();
+    /**
+     * How many times each mirror is open.
+     */
+    private final Map<Path, Integer> checkedOut = new HashMap<>();
+    /**
+     * Held while a mirror is fetched or evicted.
+     */
+    private final Map<Path, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheDir      The directory the mirrors are kept in.
+     * @param remoteUrl     Format of the remote URLs, with the repository name as its only argument,
+     *                      e.g. {@code https://github.com/%s.git} or {@code file:///srv/git/%s.git}.
+     * @param budget        The size the cache is trimmed to, in bytes.
+     * @param refreshMillis How long a fetched mirror is considered up to date.
+     */
+    MirrorCache(Path cacheDir, String remoteUrl, long budget, long refreshMillis) throws IOException {
+        this.cacheDir = cacheDir;
+        this.remoteUrl = remoteUrl;
+        this.budget = budget;
+        this.refreshMillis = refreshMillis;
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> owners = Files.list(cacheDir)) {
+            for (Path owner : (Iterable<Path>) owners::iterator) {
+                if (!Files.isDirectory(owner)) continue;
+                try (Stream<Path> mirrors = Files.list(owner)) {
+                    mirrors.filter(Files::isDirectory).forEach(mirror -> sizes.put(mirror, sizeOf(mirror)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the mirror of a repository up to date and checks it out into {@code workTree}, which must not exist.
+     */
+    void checkout(String repositoryName, File workTree) throws IOException, InterruptedException {
+        File mirror = open(repositoryName);
+        try {
+            Files.createDirectories(workTree.toPath().getParent());
+            Git.run(mirror, "worktree", "add", "--force", "--detach", workTree.getAbsolutePath(), BRANCH);
+        } catch (IOException | InterruptedException e) {
+            release(repositoryName, workTree);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a worktree created by {@link #checkout(String, File)}.
+     */
+    void release(String repositoryName, File workTree) {
+        Path mirror = getMirrorPath(repositoryName);
+        try {
+            FileUtils.deleteDirectory(workTree);
+            if (Files.isDirectory(mirror)) Git.run(mirror.toFile(), "worktree", "prune");
+        } catch (IOException ignored) {
+            // a stale worktree is pruned by the next checkout
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(repositoryName);
+        }
+    }
+
+    /**
+     * Brings the mirror of a repository up to date, and keeps it from being evicted until it is closed.
+     *
+     * @return The bare repository of the mirror, whose {@link #BRANCH} holds the remote {@code HEAD}.
+     */
+    File open(String repositoryName) throws IOException, InterruptedException {
+        Path mirror = getMirrorPath(repositoryName);
+        try {
+            synchronized (lockOf(mirror)) {
+                synchronized (this) {
+                    checkedOut.merge(mirror, 1, Integer::sum);
+                }
+                update(repositoryName, mirror);
+                touch(mirror.resolve(USED_MARKER));
+            }
+        } catch (IOException | InterruptedException e) {
+            // closed without the lock, as evicting takes the locks of other mirrors
+            close(repositoryName);
+            throw e;
+        }
+        return mirror.toFile();
+    }
+
+    /**
+     * Allows the mirror of a repository to be evicted again.
+     */
+    void close(String repositoryName) {
+        synchronized (this) {
+            checkedOut.computeIfPresent(getMirrorPath(repositoryName), (mirror, count) -> count > 1 ? count - 1 : null);
+        }
+        evict();
+    }
+
+    private void update(String repositoryName, Path mirror) throws IOException, InterruptedException {
+        Path fetched = mirror.resolve(FETCHED_MARKER);
+        if (Files.exists(fetched) && Files.getLastModifiedTime(fetched).toMillis() + refreshMillis > System.currentTimeMillis()) {
+            Counters.increment("mirror.fresh");
+            return;
+        }
+        if (!Files.exists(fetched)) {
+            // the mirror is new, or its first fetch did not complete
+            FileUtils.deleteDirectory(mirror.toFile());
+            Files.createDirectories(mirror);
+            Git.run(mirror.toFile(), "init", "--quiet", "--bare");
+            Counters.increment("mirror.created");
+        } else {
+            Git.run(mirror.toFile(), "worktree", "prune");
+            Counters.increment("mirror.fetched");
+        }
+        String url = String.format(remoteUrl, repositoryName);
+        Git.run(mirror.toFile(), "fetch", "--quiet", "--depth", "1", url, "+HEAD:refs/heads/" + BRANCH);
+        touch(fetched);
+        long size = sizeOf(mirror);
+        synchronized (this) {
+            sizes.put(mirror, size);
+        }
+    }
+
+    /**
+     * Evicts the least recently used mirrors until the cache fits its budget again.
+     * <br>
+     * Each mirror is deleted under its lock, so that it can not be opened while it is being deleted, and is skipped if
+     * it was opened since it was picked.
+     */
+    private void evict() {
+        List<Path> candidates;
+        synchronized (this) {
+            if (getTotalSize() <= budget) return;
+            candidates = new ArrayList<>(sizes.keySet());
+            candidates.removeAll(checkedOut.keySet());
+        }
+        candidates.sort(Comparator.comparing(MirrorCache::lastUsed));
+        for (Path candidate : candidates) {
+            synchronized (lockOf(candidate)) {
+                synchronized (this) {
+                    if (getTotalSize() <= budget) return;
+                    if (checkedOut.containsKey(candidate) || sizes.remove(candidate) == null) continue;
+                }
+                try {
+                    // a mirror that is only partly deleted is created anew when it is opened again
+                    Files.deleteIfExists(candidate.resolve(FETCHED_MARKER));
+                    FileUtils.deleteDirectory(candidate.toFile());
+                    Counters.increment("mirror.evicted");
+                } catch (IOException ignored) {
+                    // the mirror is recreated if it is needed again
+                }
+            }
+        }
+    }
+
+    synchronized long getTotalSize() {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private Object lockOf(Path mirror) {
+        return locks.computeIfAbsent(mirror, path -> new Object());
+    }
+
+    Path getMirrorPath(String repositoryName) {
+        return cacheDir.resolve(repositoryName + ".git");
+    }
+
+    private static Instant lastUsed(Path mirror) {
+        try {
+            return Files.getLastModifiedTime(mirror.resolve(USED_MARKER)).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static void touch(Path marker) throws IOException {
+        if (!Files.exists(marker)) Files.createFile(marker);
+        Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+    }
+
+    private static long sizeOf(Path mirror) {
+        try {
+            return FileUtils.sizeOfDirectory(mirror.toFile());
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
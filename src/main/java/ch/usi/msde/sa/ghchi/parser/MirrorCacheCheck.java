@@ -0,0 +1,95 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency check of {@link MirrorCache}: workers open and close the same repository while others open and close a
+ * second one, with a budget of zero, so that every close evicts all mirrors that are not open.
+ * <br>
+ * Every time a worker holds a mirror open, the mirror must stay intact. Every failure is printed, and the exit status
+ * is non-zero if there is any.
+ * <pre>
+ * java -cp ... ch.usi.msde.sa.ghchi.parser.MirrorCacheCheck [-workers count] [-rounds count]
+ * </pre>
+ */
+class MirrorCacheCheck {
+
+    private static final String SHARED = "acme/shared";
+    private static final String OTHER = "acme/other";
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int workers = 8;
+        int rounds = 50;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-workers")) workers = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-rounds")) rounds = Integer.parseInt(args[++i]);
+        }
+
+        Path root = Files.createTempDirectory("mirror-cache-check");
+        AtomicLong failures = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            createRemote(root.resolve("remotes"), SHARED);
+            createRemote(root.resolve("remotes"), OTHER);
+            MirrorCache cache = new MirrorCache(root.resolve("mirrors"), root.resolve("remotes").toUri() + "%s.git",
+                    0, Long.MAX_VALUE / 2);
+            List<Future<?>> results = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                String repositoryName = worker % 2 == 1 ? OTHER : SHARED;
+                int workerRounds = rounds;
+                results.add(pool.submit(() -> {
+                    for (int round = 0; round < workerRounds; round++) {
+                        if (!openAndRead(cache, repositoryName)) failures.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) result.get();
+            System.out.printf("Opened %,d mirrors, %,d failures, %,d evictions%n",
+                    (long) workers * rounds, failures.get(), Counters.get("mirror.evicted"));
+        } finally {
+            pool.shutdown();
+            FileUtils.deleteDirectory(root.toFile());
+        }
+        if (failures.get() > 0) System.exit(1);
+    }
+
+    private static boolean openAndRead(MirrorCache cache, String repositoryName) throws InterruptedException {
+        try {
+            File mirror = cache.open(repositoryName);
+            try {
+                String content = Git.run(mirror, "cat-file", "-p", MirrorCache.BRANCH + ":README");
+                if (content.trim().equals(repositoryName)) return true;
+                System.out.printf("Unexpected content of %s: %s%n", repositoryName, content.trim());
+                return false;
+            } finally {
+                cache.close(repositoryName);
+            }
+        } catch (IOException e) {
+            System.out.printf("Could not read %s: %s%n", repositoryName, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void createRemote(Path remotes, String repositoryName) throws IOException, InterruptedException {
+        File remote = remotes.resolve(repositoryName + ".git").toFile();
+        Files.createDirectories(remote.toPath());
+        Git.run(remote, "init", "--quiet");
+        Files.write(remote.toPath().resolve("README"), (repositoryName + "\n").getBytes(StandardCharsets.UTF_8));
+        Git.run(remote, "add", "README");
+        Git.run(remote, "-c", "user.name=check", "-c", "user.email=check@localhost", "commit", "--quiet", "-m", "Initial commit");
+    }
+}
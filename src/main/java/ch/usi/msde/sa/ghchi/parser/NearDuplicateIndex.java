@@ -0,0 +1,169 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Recognizes methods that are similar to a method written before, with MinHash signatures and LSH banding.
+ * <br>
+ * The code of a method, without its Javadoc, is split into identifier, number and symbol tokens. Its signature
+ * holds, for each of a number of hash functions, the smallest hash of its shingles of consecutive tokens. Two methods
+ * agree on a position of their signatures with a probability equal to the Jaccard similarity of their shingles.
+ * The signature is cut into bands of rows, sized so that a pair of methods at the similarity threshold almost always
+ * shares a band, and dissimilar pairs rarely do. A method that shares a band with a method written before is only a
+ * candidate: it is a near duplicate if their signatures, reduced to the lowest 8 bits of every hash, estimate their
+ * similarity at the threshold or above.
+ * <br>
+ * Signing a method does not depend on other methods and is left to the parse workers, only the band lookups and the
+ * comparisons are done by the writer. Each band has a table of fixed size that keeps the last method stored in each
+ * slot, and the reduced signatures are kept in a ring of fixed size, so the memory used is bounded. Once they fill
+ * up, the methods written longest ago are forgotten.
+ */
+class NearDuplicateIndex {
+
+    private static final String JAVADOC_SEPARATOR = " <SEP> ";
+
+    private final double threshold;
+    private final int shingleTokens;
+    private final int bands;
+    private final int rows;
+    private final long[] multipliers;
+    private final long[] increments;
+    private final long[][] tables;
+    private final int mask;
+    private final byte[] sketches;
+    private final int capacity;
+    private long written = 1;
+
+    /**
+     * @param threshold     The Jaccard similarity from which methods are likely to be near duplicates.
+     * @param hashes        The number of hash functions, of which as many as fit into whole bands are used.
+     * @param shingleTokens The number of tokens of a shingle.
+     * @param memoryBytes   The size of the band tables and the reduced signatures together.
+     */
+    NearDuplicateIndex(double threshold, int hashes, int shingleTokens, long memoryBytes) {
+        if (threshold <= 0 || threshold >= 1) {
+            throw new IllegalArgumentException("The threshold must be between 0 and 1: " + threshold);
+        }
+        // the longest bands with which pairs at the threshold share a band with a probability of at least 95%,
+        // longer bands make for fewer candidates
+        int bestRows = 1;
+        for (int r = 2; r <= hashes; r++) {
+            if (1 - Math.pow(1 - Math.pow(threshold, r), hashes / r) >= 0.95) bestRows = r;
+        }
+        this.threshold = threshold;
+        this.rows = bestRows;
+        this.bands = hashes / bestRows;
+        this.shingleTokens = shingleTokens;
+        SplittableRandom random = new SplittableRandom(0x6768636869L);
+        this.multipliers = new long[bands * rows];
+        this.increments = new long[bands * rows];
+        for (int i = 0; i < multipliers.length; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+        // half of the memory for each
+        long slots = Long.highestOneBit(Math.max(memoryBytes / 2 / Long.BYTES / bands, 1));
+        this.tables = new long[bands][(int) Math.min(slots, 1 << 30)];
+        this.mask = tables[0].length - 1;
+        this.capacity = (int) Math.max(Math.min(memoryBytes / 2 / multipliers.length, Integer.MAX_VALUE / multipliers.length), 1);
+        this.sketches = new byte[capacity * multipliers.length];
+    }
+
+    int getBands() {
+        return bands;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * Computes the signature of a rendered method. Safe to call from any thread.
+     */
+    int[] sign(String methodText) {
+        int separator = methodText.indexOf(JAVADOC_SEPARATOR);
+        String code = separator < 0 ? methodText : methodText.substring(separator + JAVADOC_SEPARATOR.length());
+        int[] signature = new int[multipliers.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        long[] window = new long[shingleTokens];
+        int tokens = 0;
+        int length = code.length();
+        int i = 0;
+        while (i < length) {
+            char c = code.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            if (Character.isJavaIdentifierPart(c)) {
+                while (end < length && Character.isJavaIdentifierPart(code.charAt(end))) end++;
+            }
+            window[tokens++ % shingleTokens] = hashToken(code, i, end);
+            if (tokens >= shingleTokens) addShingle(signature, window, tokens);
+            i = end;
+        }
+        // a method shorter than a shingle is a single shingle
+        if (tokens > 0 && tokens < shingleTokens) addShingle(signature, window, tokens);
+        return signature;
+    }
+
+    /**
+     * Records a method that is about to be written, unless it is a near duplicate of one that was.
+     * Only called by the writer.
+     *
+     * @return Whether the method was recorded, i.e. it is not a near duplicate.
+     */
+    boolean add(int[] signature) {
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            keys[band] = bandKey(signature, band);
+            // the high half of an entry holds the high half of the key, the low half the number of the method
+            long entry = tables[band][(int) keys[band] & mask];
+            if (entry >>> 32 == keys[band] >>> 32 && isSimilar(signature, (int) entry)) return false;
+        }
+        int method = (int) written++;
+        int offset = Integer.remainderUnsigned(method, capacity) * signature.length;
+        for (int h = 0; h < signature.length; h++) sketches[offset + h] = (byte) signature[h];
+        for (int band = 0; band < bands; band++) {
+            tables[band][(int) keys[band] & mask] = keys[band] & 0xFFFFFFFF00000000L | method & 0xFFFFFFFFL;
+        }
+        return true;
+    }
+
+    private boolean isSimilar(int[] signature, int method) {
+        long age = ((int) written - method) & 0xFFFFFFFFL;
+        // an empty slot, or a method whose signature was overwritten
+        if (age < 1 || age > capacity) return false;
+        int offset = Integer.remainderUnsigned(method, capacity) * signature.length;
+        int matches = 0;
+        for (int h = 0; h < signature.length; h++) if (sketches[offset + h] == (byte) signature[h]) matches++;
+        // unrelated hashes agree in their lowest 8 bits once in 256 times
+        double similarity = ((double) matches / signature.length - 1.0 / 256) / (1 - 1.0 / 256);
+        return similarity >= threshold;
+    }
+
+    private void addShingle(int[] signature, long[] window, int tokens) {
+        // the tokens of the shingle, oldest first
+        long shingle = 0xCBF29CE484222325L;
+        int count = Math.min(tokens, shingleTokens);
+        for (int j = tokens - count; j < tokens; j++) shingle = (shingle ^ window[j % shingleTokens]) * 0x100000001B3L;
+        for (int h = 0; h < signature.length; h++) {
+            int value = (int) ((shingle * multipliers[h] + increments[h]) >>> 32);
+            if (value < signature[h]) signature[h] = value;
+        }
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int row = band * rows; row < (band + 1) * rows; row++) key = (key ^ signature[row]) * 0x9E3779B97F4A7C15L;
+        return key ^ key >>> 29;
+    }
+
+    private static long hashToken(String code, int from, int to) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = from; i < to; i++) hash = (hash ^ code.charAt(i)) * 0x100000001B3L;
+        return hash;
+    }
+}
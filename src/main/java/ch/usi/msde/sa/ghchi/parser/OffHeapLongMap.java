@@ -0,0 +1,174 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+/**
+ * A map from longs to longs in an open-addressing table that is mapped from a file, laid out like the
+ * {@link OffHeapLongSet} with a value next to every key.
+ * <br>
+ * Entries can not be removed one by one. Instead, the values of the map may go stale, as decided by a predicate
+ * given by the owner of the map, and the stale entries are dropped whenever the table is rehashed. The table is
+ * rehashed into a new file once it is half full, with room for two to four times the entries that are still live.
+ * <pre>
+ * magic | size | capacity | key 0 | value 0 | key 1 | value 1 | ...
+ * </pre>
+ */
+final class OffHeapLongMap implements Closeable {
+
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final long MAGIC = 0x676863686973746dL;
+    private static final int HEADER_BYTES = 3 * Long.BYTES;
+    private static final int SIZE = Long.BYTES;
+    private static final int CAPACITY = 2 * Long.BYTES;
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+    private static final int SEGMENT_BITS = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final long MIN_CAPACITY = 1 << 16;
+
+    private final Path file;
+    private final LongPredicate live;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long size;
+
+    private OffHeapLongMap(Path file, LongPredicate live, FileChannel channel) throws IOException {
+        this.file = file;
+        this.live = live;
+        map(channel);
+    }
+
+    /**
+     * Opens the map stored in {@code file}, or creates an empty one.
+     *
+     * @param live Whether a value is still live, entries with stale values are dropped when the table is rehashed.
+     */
+    static OffHeapLongMap open(Path file, LongPredicate live) throws IOException {
+        if (Files.exists(file)) {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() >= HEADER_BYTES && channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).getLong() == MAGIC) {
+                return new OffHeapLongMap(file, live, channel);
+            }
+            channel.close();
+            throw new IOException("Not a map of longs: " + file);
+        }
+        return new OffHeapLongMap(file, live, create(file, MIN_CAPACITY));
+    }
+
+    private static FileChannel create(Path file, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // writing the last byte leaves a sparse file, slots only take up space once they are written
+        channel.write(ByteBuffer.allocate(1), HEADER_BYTES + capacity * SLOT_BYTES - 1);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.putLong(0, MAGIC);
+        header.putLong(SIZE, 0);
+        header.putLong(CAPACITY, capacity);
+        header.force();
+        return channel;
+    }
+
+    private void map(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.capacity = header.getLong(CAPACITY);
+        this.size = header.getLong(SIZE);
+        this.segments = new MappedByteBuffer[(int) ((capacity + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i << SEGMENT_BITS;
+            long slots = Math.min(capacity - first, 1L << SEGMENT_BITS);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * SLOT_BYTES, slots * SLOT_BYTES);
+        }
+    }
+
+    /**
+     * @return The number of entries, including the stale ones that were not dropped yet.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return The value of the key, or {@link #ABSENT}.
+     */
+    long get(long key) {
+        long slot = findSlot(key);
+        return getKey(slot) == key ? getValue(slot) : ABSENT;
+    }
+
+    void put(long key, long value) throws IOException {
+        long slot = findSlot(key);
+        if (getKey(slot) != key) {
+            set(slot, key, value);
+            header.putLong(SIZE, ++size);
+            if (size * 2 > capacity) rehash();
+        } else {
+            set(slot, key, value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return The slot of the key, or the empty slot where it would go.
+     */
+    private long findSlot(long key) {
+        if (key == 0) throw new IllegalArgumentException("0 can not be a key of the map");
+        // spreads keys that only differ in their high bits
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        long slot = (mixed ^ mixed >>> 32) & (capacity - 1);
+        for (long current = getKey(slot); current != 0 && current != key; current = getKey(slot)) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return slot;
+    }
+
+    private void rehash() throws IOException {
+        long liveEntries = 0;
+        for (long slot = 0; slot < capacity; slot++) {
+            if (getKey(slot) != 0 && live.test(getValue(slot))) liveEntries++;
+        }
+        long newCapacity = Math.max(Long.highestOneBit(Math.max(liveEntries, 1)) * 4, MIN_CAPACITY);
+        Path rehashed = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(rehashed);
+        OffHeapLongMap copy = new OffHeapLongMap(rehashed, live, create(rehashed, newCapacity));
+        for (long slot = 0; slot < capacity; slot++) {
+            long key = getKey(slot);
+            if (key != 0 && live.test(getValue(slot))) copy.put(key, getValue(slot));
+        }
+        for (MappedByteBuffer segment : copy.segments) segment.force();
+        copy.close();
+        channel.close();
+        // the buffers of the old file are unmapped once they are garbage collected
+        Files.move(rehashed, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private long getKey(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) * SLOT_BYTES);
+    }
+
+    private long getValue(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) * SLOT_BYTES + Long.BYTES);
+    }
+
+    private void set(long slot, long key, long value) {
+        MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+        int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+        segment.putLong(offset, key);
+        segment.putLong(offset + Long.BYTES, value);
+    }
+}
@@ -0,0 +1,193 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A set of longs in an open-addressing table that is mapped from a file, so that it neither lives on the heap nor
+ * has to be rebuilt by the next run.
+ * <br>
+ * The table is probed linearly, with 0 marking an empty slot, and doubled once it is half full by rehashing it into
+ * a new file that replaces the old one. Tables of more than 2^27 slots are mapped in several segments.
+ * <br>
+ * The header of the file holds a checkpoint, a number that the owner of the set associates with its content, such as
+ * the size of the file the set was last in sync with. The checkpoint is cleared, durably, before the set is first
+ * modified after it was set, so a set whose changes were lost half way is recognizably out of sync.
+ * <pre>
+ * magic | checkpoint | size | capacity | slot 0 | slot 1 | ...
+ * </pre>
+ */
+final class OffHeapLongSet implements Closeable {
+
+    static final long NO_CHECKPOINT = -1;
+
+    private static final long MAGIC = 0x6768636869736574L;
+    private static final int HEADER_BYTES = 4 * Long.BYTES;
+    private static final int CHECKPOINT = Long.BYTES;
+    private static final int SIZE = 2 * Long.BYTES;
+    private static final int CAPACITY = 3 * Long.BYTES;
+    private static final int SEGMENT_BITS = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long size;
+    private boolean modified;
+
+    private OffHeapLongSet(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        map(channel);
+    }
+
+    /**
+     * Opens the set stored in {@code file}, or creates an empty one without a checkpoint.
+     *
+     * @param initialCapacity The number of slots of a new set, a power of two.
+     */
+    static OffHeapLongSet open(Path file, long initialCapacity) throws IOException {
+        if (Files.exists(file)) {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() >= HEADER_BYTES && channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).getLong() == MAGIC) {
+                return new OffHeapLongSet(file, channel);
+            }
+            channel.close();
+            throw new IOException("Not a set of longs: " + file);
+        }
+        return new OffHeapLongSet(file, create(file, initialCapacity));
+    }
+
+    private static FileChannel create(Path file, long capacity) throws IOException {
+        if (Long.bitCount(capacity) != 1) throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // writing the last byte leaves a sparse file, slots only take up space once they are written
+        channel.write(ByteBuffer.allocate(1), HEADER_BYTES + capacity * Long.BYTES - 1);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.putLong(0, MAGIC);
+        header.putLong(CHECKPOINT, NO_CHECKPOINT);
+        header.putLong(SIZE, 0);
+        header.putLong(CAPACITY, capacity);
+        header.force();
+        return channel;
+    }
+
+    private void map(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.capacity = header.getLong(CAPACITY);
+        this.size = header.getLong(SIZE);
+        this.segments = new MappedByteBuffer[(int) ((capacity + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i << SEGMENT_BITS;
+            long slots = Math.min(capacity - first, 1L << SEGMENT_BITS);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * Long.BYTES, slots * Long.BYTES);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long getCheckpoint() {
+        return header.getLong(CHECKPOINT);
+    }
+
+    boolean contains(long value) {
+        checkValue(value);
+        for (long slot = firstSlot(value, capacity); ; slot = (slot + 1) & (capacity - 1)) {
+            long current = get(slot);
+            if (current == value) return true;
+            if (current == 0) return false;
+        }
+    }
+
+    /**
+     * @return Whether the value was not in the set yet.
+     */
+    boolean add(long value) throws IOException {
+        checkValue(value);
+        long slot = firstSlot(value, capacity);
+        for (long current = get(slot); current != 0; current = get(slot)) {
+            if (current == value) return false;
+            slot = (slot + 1) & (capacity - 1);
+        }
+        if (!modified) {
+            header.putLong(CHECKPOINT, NO_CHECKPOINT);
+            header.force();
+            modified = true;
+        }
+        put(slot, value);
+        header.putLong(SIZE, ++size);
+        if (size * 2 > capacity) grow();
+        return true;
+    }
+
+    /**
+     * Writes the set out and associates it with {@code checkpoint}, until it is modified again.
+     */
+    void checkpoint(long checkpoint) {
+        for (MappedByteBuffer segment : segments) segment.force();
+        header.putLong(CHECKPOINT, checkpoint);
+        header.force();
+        modified = false;
+    }
+
+    /**
+     * Removes every value and the checkpoint.
+     */
+    void clear() throws IOException {
+        long initialCapacity = capacity;
+        channel.close();
+        Files.delete(file);
+        map(create(file, initialCapacity));
+        modified = true;
+    }
+
+    private void grow() throws IOException {
+        Path grown = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(grown);
+        OffHeapLongSet copy = new OffHeapLongSet(grown, create(grown, capacity * 2));
+        for (long slot = 0; slot < capacity; slot++) {
+            long value = get(slot);
+            if (value != 0) copy.add(value);
+        }
+        copy.checkpoint(NO_CHECKPOINT);
+        copy.close();
+        channel.close();
+        // the buffers of the old file are unmapped once they are garbage collected
+        Files.move(grown, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void checkValue(long value) {
+        if (value == 0) throw new IllegalArgumentException("0 can not be stored in the set");
+    }
+
+    private static long firstSlot(long value, long capacity) {
+        // spreads values that only differ in their high bits
+        long mixed = value * 0x9E3779B97F4A7C15L;
+        return (mixed ^ mixed >>> 32) & (capacity - 1);
+    }
+
+    private long get(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) << 3);
+    }
+
+    private void put(long slot, long value) {
+        segments[(int) (slot >>> SEGMENT_BITS)].putLong((int) (slot & SEGMENT_MASK) << 3, value);
+    }
+}
@@ -1,74 +1,249 @@
 package ch.usi.msde.sa.ghchi.parser;
 
+import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.Position;
+import com.github.javaparser.Problem;
 import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.comments.JavadocComment;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.type.Type;
-import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import com.github.javaparser.printer.DefaultPrettyPrinter;
+import com.github.javaparser.printer.Printer;
+import com.github.javaparser.printer.configuration.DefaultConfigurationOption;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration.ConfigOption;
+import com.github.javaparser.printer.configuration.Indentation;
+import com.github.javaparser.printer.configuration.Indentation.IndentType;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class ParseMethods {
 
-    static String bin = "/bin/sh";
-    static String directory = "/tmp/clonedRepo";
+    static String directory = System.getProperty("ghchi.cloneDirectory", "/tmp/clonedRepo");
+    static String repositoryList = System.getProperty("ghchi.repositoryList", "./repolist.txt");
+    static String remoteUrl = System.getProperty("ghchi.remoteUrl", "https://github.com/%s.git");
+    static String mirrorDirectory = System.getProperty("ghchi.mirrorCache");
+    static long mirrorCacheBudget = Long.getLong("ghchi.mirrorCacheBudget", 50L * 1024 * 1024 * 1024);
+    static long cloneTimeoutMillis = Long.getLong("ghchi.cloneTimeoutMillis", Git.timeoutMillis);
+    static long mirrorRefreshMillis = Long.getLong("ghchi.mirrorRefreshMillis", 24L * 60 * 60 * 1000);
 
-    static int max_project_methods = 1000;
+    static int max_project_methods = Integer.getInteger("ghchi.maxProjectMethods", 1000);
+    static int sinkBufferSize = Integer.getInteger("ghchi.sinkBufferSize", 1 << 20);
+    static int sinkQueueCapacity = Integer.getInteger("ghchi.sinkQueueCapacity", 16);
+    static int flushRecords = Integer.getInteger("ghchi.flushRecords", 10_000);
+    static long flushIntervalMillis = Long.getLong("ghchi.flushIntervalMillis", 5_000);
+    static boolean checkoutFree = Boolean.getBoolean("ghchi.checkoutFree");
+    static boolean twoPhaseExtraction = Boolean.getBoolean("ghchi.twoPhase");
+    static boolean deduplicate = Boolean.parseBoolean(System.getProperty("ghchi.deduplicate", "true"));
+    static String extractionCacheDirectory = System.getProperty("ghchi.extractionCache");
+    static long extractionCacheBudget = Long.getLong("ghchi.extractionCacheBudget", 4L * 1024 * 1024 * 1024);
+    static String challengeIndexFile = System.getProperty("ghchi.challengeIndex");
+    static boolean skipSeenFiles = Boolean.getBoolean("ghchi.skipSeenFiles");
+    static boolean dropNearDuplicates = Boolean.getBoolean("ghchi.nearDuplicates");
+    static double nearDuplicateThreshold = Double.parseDouble(System.getProperty("ghchi.nearDuplicateThreshold", "0.8"));
+    static int minHashes = Integer.getInteger("ghchi.minHashes", 128);
+    static int shingleTokens = Integer.getInteger("ghchi.shingleTokens", 3);
+    static long nearDuplicateMemory = Long.getLong("ghchi.nearDuplicateMemory", 256L * 1024 * 1024);
+    static long maxFileBytes = Long.getLong("ghchi.maxFileBytes", 8L * 1024 * 1024);
+    static boolean skipGenerated = Boolean.parseBoolean(System.getProperty("ghchi.skipGenerated", "true"));
+    // off by default, as a deadline hands every file to a thread of its own
+    static long fileDeadlineMillis = Long.getLong("ghchi.fileDeadlineMillis", 0);
+    static String quarantineDirectory = System.getProperty("ghchi.quarantineDirectory");
+    static int chunkedParseBytes = Integer.getInteger("ghchi.chunkedParseBytes", 1024 * 1024);
+    static boolean nestedMethods = Boolean.parseBoolean(System.getProperty("ghchi.nestedMethods", "true"));
+    static long seed = Long.getLong("ghchi.seed", ThreadLocalRandom.current().nextLong());
+
+    static int cloneWorkers = Integer.getInteger("ghchi.cloneWorkers", 4);
+    static int parseWorkers = Integer.getInteger("ghchi.parseWorkers", 2);
+    static int queueCapacity = Integer.getInteger("ghchi.queueCapacity", 4);
+    static long workspaceQuota = Long.getLong("ghchi.workspaceQuota", 10L * 1024 * 1024 * 1024);
+    // test source roots by the usual layouts, e.g. src/test, src/androidTest or testFixtures, and hidden directories;
+    // whole names and case sensitive, so packages such as latest or contest are kept
+    static String excludedDirectories = System.getProperty("ghchi.excludedDirectories",
+            "(?-i)[Tt]ests?|test[A-Z_].*|[a-z]+Tests?|testing|\\..*|node_modules");
+    static String buildOutputDirectories = System.getProperty("ghchi.buildOutputDirectories", "target|build|out|bin");
+    // test classes by the usual naming conventions, and entry points; case sensitive, so Contest.java is kept
+    static String excludedFiles = System.getProperty("ghchi.excludedFiles", "(?-i)Test[A-Z0-9_].*\\.java|.*Tests?\\.java|.*TestCase\\.java|Main\\.java");
+    static int parseParallelism = Integer.getInteger("ghchi.parseParallelism", Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool PARSE_POOL = new ForkJoinPool(parseParallelism);
+    private static final SourcePathFilter SOURCE_PATH_FILTER = new SourcePathFilter(excludedDirectories, buildOutputDirectories, excludedFiles);
+    private static final SourceTriage SOURCE_TRIAGE = new SourceTriage(maxFileBytes, skipGenerated);
+    private static final ThreadLocal<JavaParser> JAVA_PARSER = ThreadLocal.withInitial(JavaParser::new);
+    private static final Printer METHOD_PRINTER = new DefaultPrettyPrinter(new DefaultPrinterConfiguration()
+            .removeOption(new DefaultConfigurationOption(ConfigOption.PRINT_COMMENTS))
+            .removeOption(new DefaultConfigurationOption(ConfigOption.PRINT_JAVADOC))
+            .addOption(new DefaultConfigurationOption(ConfigOption.END_OF_LINE_CHARACTER, " "))
+            .addOption(new DefaultConfigurationOption(ConfigOption.INDENTATION, new Indentation(IndentType.SPACES, 0))));
+
+    private static MirrorCache mirrorCache;
+    private static Quarantine quarantine;
+    private static NearDuplicateIndex nearDuplicates;
+    private static SeenFiles seenFiles;
+    private static ExtractionCache extractionCache;
+    private static ChallengeIndex challengeIndex;
 
     public static void main(String[] args) throws Exception {
         String csvFileName = args[0];
-        Scanner scanner = new Scanner(new File("./repolist.txt"));
+        List<String> repositoryNames = new ArrayList<>();
+        Scanner scanner = new Scanner(new File(repositoryList));
         while (scanner.hasNextLine()) {
-            String repositoryName = scanner.nextLine();
-            cloneRepository(repositoryName);
-            File file = new File(directory + "/" + repositoryName);
-            List<Pair<String, String>> methodLines = new ArrayList<>();
-            parseJavaFiles(file, methodLines);
-            saveMethods(csvFileName, methodLines);
-            deleteClone(repositoryName);
+            String repositoryName = scanner.nextLine().trim();
+            if (!repositoryName.isEmpty()) repositoryNames.add(repositoryName);
+        }
+        if (mirrorDirectory != null) {
+            mirrorCache = new MirrorCache(Path.of(mirrorDirectory), remoteUrl, mirrorCacheBudget, mirrorRefreshMillis);
+        }
+        if (quarantineDirectory != null) quarantine = new Quarantine(Path.of(quarantineDirectory));
+        if (extractionCacheDirectory != null) {
+            // the parser and its printers are hashed by the javaparser-core jar
+            String options = "nestedMethods=" + nestedMethods + ",chunkedParseBytes=" + chunkedParseBytes;
+            String version = ExtractionCache.version(options, ParseMethods.class, MethodDiscovery.class,
+                    MemberChunks.class, StringProcessors.class, JavadocNormalizer.class, JavaParser.class);
+            extractionCache = ExtractionCache.open(Path.of(extractionCacheDirectory), version, extractionCacheBudget);
+        }
+        if (challengeIndexFile != null) {
+            challengeIndex = ChallengeIndex.open(Path.of(challengeIndexFile));
+            System.out.printf("Leaving out the %,d methods of the challenge set%n", challengeIndex.size());
+        }
+        CompletionJournal journal = CompletionJournal.open(Path.of(csvFileName), seed);
+        seed = journal.getSeed();
+        System.out.println("Sampling seed: " + seed);
+        repositoryNames.removeIf(journal::isCompleted);
+
+        MethodDeduplicator deduplicator = deduplicate
+                ? MethodDeduplicator.open(Path.of(csvFileName), journal.getCommittedOffset())
+                : null;
+        if (dropNearDuplicates) {
+            nearDuplicates = new NearDuplicateIndex(nearDuplicateThreshold, minHashes, shingleTokens, nearDuplicateMemory);
+            System.out.printf("Near duplicates: %d bands of %d rows%n", nearDuplicates.getBands(), nearDuplicates.getRows());
+        }
+        if (skipSeenFiles) seenFiles = SeenFiles.open(Path.of(csvFileName), journal.getCommittedOffset());
+        CsvSink sink = new CsvSink(csvFileName, journal, deduplicator, nearDuplicates, seenFiles,
+                sinkBufferSize, sinkQueueCapacity, flushRecords, flushIntervalMillis);
+        // on SIGTERM, commit what has been written so far, a restarted run picks up from there
+        Thread checkpoint = new Thread(() -> {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("Could not checkpoint " + csvFileName + ": " + e.getMessage());
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(checkpoint);
+        new RepositoryPipeline(sink, cloneWorkers, parseWorkers, queueCapacity, workspaceQuota)
+                .run(repositoryNames);
+        Runtime.getRuntime().removeShutdownHook(checkpoint);
+        if (extractionCache != null) extractionCache.close();
+        Counters.print(System.out);
+        long methods = Counters.get("dedup.methods");
+        if (deduplicator != null) {
+            long duplicates = Counters.get("dedup.duplicates");
+            System.out.printf("Dropped %,d duplicates of %,d methods (%.1f%%), %,d distinct methods written so far%n",
+                    duplicates, methods, methods == 0 ? 0.0 : 100.0 * duplicates / methods, deduplicator.size());
+        }
+        if (nearDuplicates != null) {
+            long duplicates = Counters.get("dedup.nearDuplicates");
+            System.out.printf("Dropped %,d near duplicates of %,d methods (%.1f%%)%n",
+                    duplicates, methods, methods == 0 ? 0.0 : 100.0 * duplicates / methods);
+        }
+        if (seenFiles != null) {
+            long skipped = Counters.get("files.seenBefore") + Counters.get("files.seenInRun");
+            long files = skipped + Counters.get("parse.files");
+            System.out.printf("Skipped %,d files seen before of %,d files (%.1f%%), %,d distinct files seen so far%n",
+                    skipped, files, files == 0 ? 0.0 : 100.0 * skipped / files, seenFiles.size());
+        }
+        if (challengeIndex != null) {
+            long dropped = Counters.get("challenge.dropped");
+            long checked = Counters.get("challenge.checked");
+            System.out.printf("Dropped %,d methods of the challenge set of %,d methods checked (%.2f%%)%n",
+                    dropped, checked, checked == 0 ? 0.0 : 100.0 * dropped / checked);
+        }
+        if (extractionCache != null) {
+            long hits = Counters.get("cache.hits");
+            long lookups = hits + Counters.get("cache.misses");
+            System.out.printf("Served %,d of %,d files from the extraction cache (%.1f%%)%n",
+                    hits, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups);
         }
     }
 
     /**
      * Helper methods that we used also in our original GHCHI
      * */
-    private static String getRepositoryPath(String repositoryName) {
+    static String getRepositoryPath(String repositoryName) {
         return directory + "/" + repositoryName;
     }
 
-    private static void cloneRepository(String repositoryName) throws IOException, InterruptedException {
-        File repoDir = new File(getRepositoryPath(repositoryName.split("/")[0]));
-        Files.createDirectories(repoDir.toPath());
-        String[] cmd = new String[]{
-                bin, "-c", String.format("git clone --depth 1 https://github.com/%s.git", repositoryName)
-        };
-        Process process = Runtime.getRuntime().exec(cmd, null, repoDir);
-        process.waitFor();
+    /**
+     * Clones each repository into its own directory, so that repositories of the same owner can be processed side by side.
+     * <br>
+     * With a mirror cache, the repository is checked out from its local mirror instead.
+     * Checkout-free extraction only needs the objects of the repository, so nothing is checked out at all.
+     *
+     * @throws IOException If the clone failed or timed out, with its exit status and duration.
+     */
+    static void cloneRepository(String repositoryName) throws IOException, InterruptedException {
+        // source archives are read in place
+        if (ArchiveTree.isArchive(repositoryName)) return;
+        File repoDir = new File(getRepositoryPath(repositoryName));
+        File ownerDir = repoDir.getParentFile();
+        // a clone may be left behind by an interrupted run
+        FileUtils.deleteDirectory(repoDir);
+        if (mirrorCache != null) {
+            if (checkoutFree) mirrorCache.open(repositoryName);
+            else mirrorCache.checkout(repositoryName, repoDir);
+            return;
+        }
+        Files.createDirectories(ownerDir.toPath());
+        List<String> args = new ArrayList<>(List.of("clone", "--quiet", "--depth", "1"));
+        if (checkoutFree) args.add("--bare");
+        args.add(String.format(remoteUrl, repositoryName));
+        args.add(repoDir.getName());
+        Git.execute(ownerDir, cloneTimeoutMillis, args.toArray(new String[0])).check();
     }
 
-    private static void deleteClone(String repositoryName) {
-        File repoDir = new File(getRepositoryPath(repositoryName.split("/")[0]));
+    static void deleteClone(String repositoryName) {
+        if (ArchiveTree.isArchive(repositoryName)) return;
+        File repoDir = new File(getRepositoryPath(repositoryName));
+        if (mirrorCache != null) {
+            if (checkoutFree) mirrorCache.close(repositoryName);
+            else mirrorCache.release(repositoryName, repoDir);
+            return;
+        }
         try {
             FileUtils.deleteDirectory(repoDir);
         } catch (Exception ignored) {
@@ -78,95 +253,390 @@ public class ParseMethods {
 
 
     /**
-     * Methods used to iterate through all the java files in the directory and parse them successively
+     * The Java sources of a cloned repository: its working tree or, with checkout-free extraction, the blobs of its head.
+     * <br>
+     * Entries of the repository list that name a source archive are read from the archive instead.
+     */
+    static SourceTree openSourceTree(String repositoryName) {
+        if (ArchiveTree.isArchive(repositoryName)) return new ArchiveTree(Path.of(repositoryName), SOURCE_PATH_FILTER);
+        if (!checkoutFree) return new DirectoryTree(Path.of(getRepositoryPath(repositoryName)), SOURCE_PATH_FILTER);
+        if (mirrorCache != null) {
+            return new GitBlobTree(mirrorCache.getMirrorPath(repositoryName).toFile(), MirrorCache.BRANCH, SOURCE_PATH_FILTER);
+        }
+        return new GitBlobTree(new File(getRepositoryPath(repositoryName)), "HEAD", SOURCE_PATH_FILTER);
+    }
+
+    /**
+     * Extracts the sampled methods of a repository.
+     * <br>
+     * In two-phase mode only the locations of the qualifying methods are sampled while parsing,
+     * and the methods are rendered once the sample is complete.
+     * Both modes select the same methods.
+     * <br>
+     * With {@code ghchi.skipSeenFiles}, files that were already parsed for another repository are left out.
+     */
+    static List<Pair<String, String>> extractMethods(SourceTree tree, String repositoryName) throws IOException, InterruptedException {
+        long repositorySeed = ReservoirSampler.deriveSeed(seed, repositoryName);
+        try {
+            if (!twoPhaseExtraction) {
+                ReservoirSampler<Pair<String, String>> sampler = new ReservoirSampler<>(max_project_methods, repositorySeed);
+                parseSources(tree, repositoryName, key -> true, file -> {
+                    if (!claimFile(repositoryName, file)) return;
+                    Counters.increment("parse.files");
+                    parseClassMethods(file, sampler);
+                });
+                return sampler.getSample();
+            }
+            ReservoirSampler<MethodHandle> sampler = new ReservoirSampler<>(max_project_methods, repositorySeed);
+            parseSources(tree, repositoryName, key -> true, file -> {
+                if (!claimFile(repositoryName, file)) return;
+                Counters.increment("parse.files");
+                locateClassMethods(file, sampler);
+            });
+            return renderMethods(tree, repositoryName, sampler.getSample());
+        } catch (Throwable e) {
+            if (seenFiles != null) seenFiles.release(repositoryName);
+            throw e;
+        }
+    }
+
+    private static boolean claimFile(String repositoryName, SourceFile file) throws IOException {
+        return seenFiles == null || seenFiles.claim(repositoryName, file);
+    }
+
+    /**
+     * Methods used to iterate through all the java files of a repository and parse them in parallel.
+     * <br>
+     * The tree may read the next chunk of files while the current one is being parsed, but no further.
+     * Files that exceed their {@link FileBudget} are abandoned, and copied to the quarantine directory if there is one.
+     */
+    private static void parseSources(SourceTree tree, String repositoryName, Predicate<String> accept, FileAction action) throws IOException, InterruptedException {
+        Deque<ForkJoinTask<Void>> parsing = new ArrayDeque<>();
+        tree.read(accept, chunk -> {
+            if (parsing.size() > 1) parsing.poll().join();
+            parsing.add(PARSE_POOL.submit(new ParseFilesTask(repositoryName, chunk, 0, chunk.size(), action)));
+        });
+        for (ForkJoinTask<Void> task : parsing) task.join();
+    }
+
+    /**
+     * Renders the sampled methods, parsing each file that contains one of them a second time.
+     *
+     * @return The rendered methods, in sample order.
+     */
+    private static List<Pair<String, String>> renderMethods(SourceTree tree, String repositoryName, List<MethodHandle> sample) throws IOException, InterruptedException {
+        Map<String, Set<String>> keysByFile = new HashMap<>();
+        for (MethodHandle handle : sample) {
+            keysByFile.computeIfAbsent(handle.getFileKey(), file -> new HashSet<>()).add(handle.getKey());
+        }
+        Map<String, Pair<String, String>> rendered = new ConcurrentHashMap<>();
+        parseSources(tree, repositoryName, keysByFile::containsKey, file -> renderClassMethods(file, keysByFile.get(file.getKey()), rendered));
+
+        List<Pair<String, String>> methodLines = new ArrayList<>(sample.size());
+        for (MethodHandle handle : sample) {
+            Pair<String, String> methodLine = rendered.get(handle.getKey());
+            // the file may have become unreadable in the meantime
+            if (methodLine != null && !isChallengeMethod(methodLine.getKey(), methodLine.getValue())) methodLines.add(methodLine);
+        }
+        return methodLines;
+    }
+
+    /**
+     * Checks a method against the challenge set of {@code ghchi.challengeIndex}, if any.
+     * Two-phase extraction only renders the sampled methods, so there the challenge methods are dropped from the
+     * sample, which leaves a repository with fewer methods than it could have had.
+     */
+    private static boolean isChallengeMethod(String name, String methodText) {
+        if (challengeIndex == null) return false;
+        Counters.increment("challenge.checked");
+        if (!challengeIndex.contains(name, methodText)) return false;
+        Counters.increment("challenge.dropped");
+        return true;
+    }
+
+    /**
+     * Computes the near-duplicate signatures of the methods of a repository, which takes a small fraction of the
+     * time it took to parse them.
+     *
+     * @return The signatures in the order of the methods, or {@code null} if near duplicates are kept.
+     */
+    static List<int[]> signMethods(List<Pair<String, String>> methodLines) {
+        if (nearDuplicates == null) return null;
+        return methodLines.stream()
+                .map(methodLine -> nearDuplicates.sign(methodLine.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private interface FileAction {
+        void apply(SourceFile file) throws IOException;
+    }
+
+    /**
+     * Processes a range of files by splitting it in halves until only a few files remain.
+     * Idle workers steal the halves that have not been started yet.
      */
-    @SuppressWarnings("ConstantConditions")
-    public static void parseJavaFiles(File dir, List<Pair<String, String>> methodLines) {
-        String dirName = dir.getName();
-        if (dir.isDirectory()) {
-            for (File file : dir.listFiles()) {
-                if (!canSkip(dirName, ".*(test).*")) parseJavaFiles(file, methodLines);
+    private static class ParseFilesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 4;
+
+        private final String repositoryName;
+        private final List<SourceFile> files;
+        private final int from;
+        private final int to;
+        private final FileAction action;
+
+        ParseFilesTask(String repositoryName, List<SourceFile> files, int from, int to, FileAction action) {
+            this.repositoryName = repositoryName;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) apply(files.get(i));
+                return;
             }
-        } else {
-            boolean canSkip = canSkip(dirName, ".*(main)|(test).*");
-            String extension = FilenameUtils.getExtension(dirName);
-            if (!canSkip && extension.equals("java")) {
-                try {
-                    parseClassMethods(dir, methodLines);
-                } catch (ParseProblemException ignored) {
-                    // ignore files that can not be parsed
-                } catch (FileNotFoundException ignored) {
-                    // ignore files that could not be located
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new ParseFilesTask(repositoryName, files, from, middle, action),
+                    new ParseFilesTask(repositoryName, files, middle, to, action)
+            );
+        }
+
+        /**
+         * Applies the action to a file. A failure only costs the file, the other files of the repository are kept.
+         */
+        private void apply(SourceFile file) {
+            long start = System.nanoTime();
+            try {
+                FileBudget.run(repositoryName, file, fileDeadlineMillis, () -> action.apply(file));
+            } catch (FileBudget.Exhausted e) {
+                throw e;
+            } catch (FileBudget.Exceeded e) {
+                Counters.increment("budget." + e.getReason());
+                if (quarantine != null) quarantine.add(repositoryName, file, e.getReason(), e.getElapsedMillis());
+            } catch (ParseProblemException ignored) {
+                // ignore files that can not be parsed
+            } catch (IOException ignored) {
+                // ignore files that could not be read
+            } catch (RuntimeException e) {
+                // e.g. a bug of the printer or of a visitor on some unusual construct
+                System.err.printf("Could not parse %s of %s: %s%n", file.getKey(), repositoryName, e);
+                Counters.increment("parse.failures");
+                if (quarantine != null) {
+                    quarantine.add(repositoryName, file, "failure", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                 }
             }
         }
     }
 
-    private static boolean canSkip(String name, String regex) {
-        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(name).matches();
+    /**
+     * Methods used for parsing the methods for each class
+     * <br>
+     * {@link StaticJavaParser} shares its configuration between all threads,
+     * so each parse worker uses its own {@link JavaParser} instead.
+     * Methods of anonymous and local classes are only collected if {@code ghchi.nestedMethods} is not false.
+     * <br>
+     * The methods of a file are offered once all of them have been rendered, so that they can be stored in the
+     * {@link ExtractionCache}, and files that are in the cache are not parsed at all.
+     * Methods of the challenge set are left out before they are offered, so they do not take up room in the sample.
+     */
+    static void parseClassMethods(SourceFile file, ReservoirSampler<Pair<String, String>> sampler) throws IOException {
+        byte[] content = readTriaged(file);
+        if (content == null) return;
+        String contentId = extractionCache == null ? null : file.getBlobId().orElseGet(() -> SourceFile.computeBlobId(content));
+        List<Triple<String, String, String>> methods = contentId == null ? null : extractionCache.get(contentId);
+        if (methods == null) {
+            List<Triple<String, String, String>> extracted = new ArrayList<>();
+            forEachMethod(content, declaration -> {
+                if (!isCandidate(declaration)) return;
+                Pair<String, String> methodLine = renderMethod(declaration);
+                extracted.add(Triple.of(methodLocation(declaration), methodLine.getKey(), methodLine.getValue()));
+            });
+            if (contentId != null) extractionCache.put(contentId, extracted);
+            methods = extracted;
+        }
+        List<Triple<String, String, String>> candidates = methods;
+        FileBudget.commit(() -> {
+            for (Triple<String, String, String> method : candidates) {
+                if (isChallengeMethod(method.getMiddle(), method.getRight())) continue;
+                sampler.offer(file.getKey() + "#" + method.getLeft(), Pair.of(method.getMiddle(), method.getRight()));
+            }
+        });
+    }
+
+    /**
+     * First phase of the two-phase extraction: only records where the qualifying methods are.
+     */
+    private static void locateClassMethods(SourceFile file, ReservoirSampler<MethodHandle> sampler) throws IOException {
+        byte[] content = readTriaged(file);
+        if (content == null) return;
+        List<MethodHandle> handles = new ArrayList<>();
+        forEachMethod(content, declaration -> {
+            if (isCandidate(declaration)) handles.add(new MethodHandle(file.getKey(), methodKey(file, declaration)));
+        });
+        FileBudget.commit(() -> handles.forEach(handle -> sampler.offer(handle.getKey(), handle)));
     }
 
     /**
-     * Methods used for parsing the methods for each class
+     * Second phase of the two-phase extraction: renders the sampled methods of a file.
+     */
+    private static void renderClassMethods(SourceFile file, Set<String> keys,
+                                           Map<String, Pair<String, String>> rendered) throws IOException {
+        Map<String, Pair<String, String>> methodLines = new HashMap<>();
+        forEachMethod(file.readAllBytes(), declaration -> {
+            if (!isCandidate(declaration)) return;
+            String key = methodKey(file, declaration);
+            if (keys.contains(key)) methodLines.put(key, renderMethod(declaration));
+        });
+        FileBudget.commit(() -> rendered.putAll(methodLines));
+    }
+
+    /**
+     * Calls the action for every method of a file.
+     * <br>
+     * Files of at least {@code ghchi.chunkedParseBytes} are parsed one top-level member at a time, so that only the
+     * tree of a single member is held in memory. If the file can not be split, or a member can not be parsed on its
+     * own, the whole file is parsed instead, and the methods already found are not found again.
      */
-    private static void parseClassMethods(File file, List<Pair<String, String>> dataLines) throws FileNotFoundException {
-        new VoidVisitorAdapter<>() {
-            @Override
-            public void visit(MethodDeclaration declaration, Object arg) {
-                super.visit(declaration, arg);
-                String name = declaration.getNameAsString();
-                Optional<BlockStmt> bodyBlock = declaration.getBody();
-                int statements = bodyBlock.map(BlockStmt::getStatements).map(NodeList::size).orElse(0);
-                boolean correctSize = statements > 2 && statements < 20;
-                boolean isTestMethod = name.toLowerCase().contains("test");
-                if (bodyBlock.isPresent() && !isTestMethod && correctSize) {
-                    String javaDoc = declaration.getJavadocComment()
-                            .map(JavadocComment::toString)
-                            .map(StringProcessors::processJavadocString)
-                            .orElse("");
-
-                    declaration.getAnnotations().clear();
-                    Type type = declaration.getType();
-                    type.getAnnotations().clear();
-                    type.getComment().ifPresent(type::remove);
-
-                    String signature = declaration.getType() + " " + declaration.getNameAsString();
-                    String parameters = declaration.getParameters().stream()
-                            .peek(parameter -> {
-                                parameter.getAnnotations().clear();
-                                parameter.getComment().ifPresent(parameter::remove);
-                            })
-                            .map(Node::toString)
-                            .collect(Collectors.joining(", ", "(", ") "));
-
-                    bodyBlock.get().getAllContainedComments().forEach(Comment::remove);
-
-                    String body = bodyBlock
-                            .map(BlockStmt::toString)
-                            .map(StringProcessors::processMethodString)
-                            .orElse(";");
-
-                    dataLines.add(Pair.of(name, javaDoc + signature + parameters + body));
+    private static void forEachMethod(byte[] content, Consumer<MethodDeclaration> action) {
+        Consumer<MethodDeclaration> checkedAction = declaration -> {
+            FileBudget.checkDeadline();
+            action.accept(declaration);
+        };
+        if (content.length < chunkedParseBytes) {
+            MethodDiscovery.forEachMethod(parse(new ByteArrayInputStream(content)), nestedMethods, checkedAction);
+            return;
+        }
+        MemberChunks chunks = MemberChunks.split(new String(content, StandardCharsets.UTF_8));
+        Set<Position> found = new HashSet<>();
+        if (chunks != null) {
+            try {
+                parse(chunks.getSkeleton());
+                for (MemberChunks.Member member : chunks.getMembers()) {
+                    FileBudget.checkDeadline();
+                    MethodDiscovery.forEachMethod(parse(member.getSource()), nestedMethods, declaration -> {
+                        member.relocate(declaration);
+                        declaration.getBegin().ifPresent(found::add);
+                        checkedAction.accept(declaration);
+                    });
                 }
+                Counters.increment("chunked.files");
+                Counters.add("chunked.members", chunks.getMembers().size());
+                return;
+            } catch (ParseProblemException e) {
+                // split in the wrong place
             }
-        }.visit(StaticJavaParser.parse(file), null);
+        }
+        Counters.increment("chunked.fallbacks");
+        MethodDiscovery.forEachMethod(parse(new ByteArrayInputStream(content)), nestedMethods, declaration -> {
+            if (!declaration.getBegin().map(found::contains).orElse(false)) checkedAction.accept(declaration);
+        });
+    }
+
+    private static boolean isCandidate(MethodDeclaration declaration) {
+        String name = declaration.getNameAsString();
+        Optional<BlockStmt> bodyBlock = declaration.getBody();
+        int statements = bodyBlock.map(BlockStmt::getStatements).map(NodeList::size).orElse(0);
+        boolean correctSize = statements > 2 && statements < 20;
+        boolean isTestMethod = name.toLowerCase().contains("test");
+        return bodyBlock.isPresent() && !isTestMethod && correctSize;
+    }
+
+    private static String methodKey(SourceFile file, MethodDeclaration declaration) {
+        return file.getKey() + "#" + methodLocation(declaration);
+    }
+
+    private static String methodLocation(MethodDeclaration declaration) {
+        return declaration.getBegin().map(Position::toString).orElse(declaration.getNameAsString());
     }
 
     /**
-     * Used for saving the extracted methods to a CSV file.
-     *
-     * @param filePath The path of the CSV file.
+     * Renders a method without its annotations and comments, leaving the tree as it is.
+     * <br>
+     * The parts are printed without comments and with spaces instead of line breaks and indentation,
+     * so the body only needs its spacing normalized and nothing has to be removed from the tree first.
+     */
+    private static Pair<String, String> renderMethod(MethodDeclaration declaration) {
+        String name = declaration.getNameAsString();
+        String javaDoc = declaration.getJavadocComment()
+                .map(JavadocComment::toString)
+                .map(StringProcessors::processJavadocString)
+                .orElse("");
+
+        String signature = printWithoutAnnotations(declaration.getType()) + " " + name;
+        String parameters = declaration.getParameters().stream()
+                .map(ParseMethods::printWithoutAnnotations)
+                .collect(Collectors.joining(", ", "(", ") "));
+
+        String body = declaration.getBody()
+                .map(METHOD_PRINTER::print)
+                .map(StringProcessors::processMethodString)
+                .orElse(";");
+
+        return Pair.of(name, javaDoc + signature + parameters + body);
+    }
+
+    /**
+     * Prints a type without its own annotations. Annotated types are rare, and only those are copied.
      */
-    private static void saveMethods(String filePath, List<Pair<String, String>> dataLines) throws IOException {
-        FileWriter writer = new FileWriter(filePath, true);
-        Collections.shuffle(dataLines);
-        dataLines = dataLines.stream().limit(max_project_methods).collect(Collectors.toList());
+    private static String printWithoutAnnotations(Type type) {
+        if (type.getAnnotations().isEmpty()) return METHOD_PRINTER.print(type);
+        Type copy = type.clone();
+        copy.getAnnotations().clear();
+        return METHOD_PRINTER.print(copy);
+    }
 
-        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
-        for (Pair<String, String> line : dataLines) {
-            printer.printRecord(line.getKey(), line.getValue());
+    private static String printWithoutAnnotations(Parameter parameter) {
+        if (parameter.getAnnotations().isEmpty()) return METHOD_PRINTER.print(parameter);
+        Parameter copy = parameter.clone();
+        copy.getAnnotations().clear();
+        return METHOD_PRINTER.print(copy);
+    }
+
+    /**
+     * Reads a file of the first pass, unless {@link SourceTriage} rejects it beforehand.
+     * Files over the size limit are abandoned like files past their deadline.
+     *
+     * @return The content of the file, or {@code null} if it was rejected.
+     */
+    private static byte[] readTriaged(SourceFile file) throws IOException {
+        String rejected = SOURCE_TRIAGE.rejectBeforeReading(file.getKey(), file.getSize());
+        byte[] content = null;
+        if (rejected == null) {
+            content = file.readAllBytes();
+            rejected = SOURCE_TRIAGE.reject(content);
         }
+        if (rejected != null) {
+            Counters.increment("triage." + rejected);
+            if (rejected.equals(SourceTriage.SIZE)) throw FileBudget.exceeded(rejected);
+            return null;
+        }
+        return content;
+    }
 
-        writer.close();
+    private static CompilationUnit parse(InputStream in) {
+        return getResult(JAVA_PARSER.get().parse(FileBudget.guard(in)));
+    }
+
+    private static CompilationUnit parse(String source) {
+        return getResult(JAVA_PARSER.get().parse(source));
+    }
+
+    private static CompilationUnit getResult(ParseResult<CompilationUnit> result) {
+        if (!result.isSuccessful()) {
+            // the parser reports what it caught as a problem, including the abandoning of the file
+            for (Problem problem : result.getProblems()) {
+                for (Throwable cause = problem.getCause().orElse(null); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof FileBudget.Exceeded) throw (FileBudget.Exceeded) cause;
+                }
+            }
+            throw new ParseProblemException(result.getProblems());
+        }
+        return result.getResult().orElseThrow();
     }
-}
\ No newline at end of file
+}
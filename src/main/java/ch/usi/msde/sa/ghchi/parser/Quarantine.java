@@ -0,0 +1,49 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Collects copies of the source files that exceeded their budget, as a regression corpus for the parser.
+ * <br>
+ * Every copy is named after the hash of its content, so a file that offends in several repositories or runs is
+ * kept once. The index lists every offence with the reason, the time spent on the file, its size, and where it
+ * came from. The copies can be fed to the parser benchmarks directly, e.g. with
+ * {@code -p fixtures=<directory> -p fixture=<hash>}.
+ * <pre>
+ * deadline	61023	734112	3f2a...	apache/camel	core/src/main/java/Big.java
+ * size	0	9437184	91bc...	openjdk/jdk	src/Generated.java
+ * </pre>
+ */
+class Quarantine {
+
+    static final String INDEX = "quarantine.tsv";
+
+    private final Path directory;
+
+    Quarantine(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    synchronized void add(String repositoryName, SourceFile file, String reason, long elapsedMillis) {
+        try {
+            byte[] content = file.readAllBytes();
+            String hash = Hashing.murmur3_128().hashBytes(content).toString();
+            Path copy = directory.resolve(hash + ".java");
+            if (!Files.exists(copy)) Files.write(copy, content);
+            String entry = String.join("\t", reason, Long.toString(elapsedMillis), Integer.toString(content.length),
+                    hash, repositoryName, file.getKey()) + "\n";
+            Files.writeString(directory.resolve(INDEX), entry, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Counters.increment("quarantine.files");
+        } catch (IOException e) {
+            System.err.printf("Could not quarantine %s of %s: %s%n", file.getKey(), repositoryName, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Staged clone → parse → write pipeline over a list of repositories.
+ * <br>
+ * Clone workers fetch repositories ahead of the parse workers, which hand their results to an ordered
+ * writer. Records are appended to the CSV file in repository list order, so the output is laid out
+ * exactly as it would be by a sequential run.
+ */
+class RepositoryPipeline {
+
+    private static final Cloned END_OF_INPUT = new Cloned(-1, null, 0);
+
+    private final CsvSink sink;
+    private final int cloneWorkers;
+    private final int parseWorkers;
+
+    private final BlockingQueue<Cloned> parseQueue;
+    private final Semaphore window;
+    private final WorkspaceQuota quota;
+
+    private final Map<Integer, Extracted> pending = new HashMap<>();
+    private int nextToWrite = 0;
+    private IOException writeFailure;
+    private volatile FileBudget.Exhausted exhausted;
+
+    RepositoryPipeline(CsvSink sink, int cloneWorkers, int parseWorkers, int queueCapacity, long workspaceQuota) {
+        this.sink = sink;
+        this.cloneWorkers = cloneWorkers;
+        this.parseWorkers = parseWorkers;
+        this.parseQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // Bounds the number of repositories between clone start and write,
+        // which in turn bounds the results waiting in the reorder buffer.
+        this.window = new Semaphore(cloneWorkers + queueCapacity + parseWorkers);
+        this.quota = new WorkspaceQuota(workspaceQuota);
+    }
+
+    /**
+     * Processes the repositories and closes the sink once all of them have been written.
+     * <br>
+     * Once too many threads are stuck in the parser, no further repositories are started, and the run fails after the
+     * started ones have been written.
+     */
+    void run(List<String> repositories) throws IOException, InterruptedException {
+        ExecutorService cloners = Executors.newFixedThreadPool(cloneWorkers);
+        List<Thread> parsers = new ArrayList<>();
+        for (int i = 0; i < parseWorkers; i++) {
+            Thread parser = new Thread(this::parseLoop, "parse-worker-" + i);
+            parser.start();
+            parsers.add(parser);
+        }
+
+        try {
+            for (int i = 0; i < repositories.size() && exhausted == null; i++) {
+                window.acquire();
+                int index = i;
+                String repositoryName = repositories.get(i);
+                cloners.execute(() -> cloneStage(index, repositoryName));
+            }
+        } finally {
+            cloners.shutdown();
+            cloners.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            for (int i = 0; i < parseWorkers; i++) parseQueue.put(END_OF_INPUT);
+            for (Thread parser : parsers) parser.join();
+            sink.close();
+        }
+        if (writeFailure != null) throw writeFailure;
+        if (exhausted != null) throw new IOException("Stopped the run: " + exhausted.getMessage(), exhausted);
+    }
+
+    private void cloneStage(int index, String repositoryName) {
+        long size = 0;
+        try {
+            quota.awaitCapacity();
+            long start = System.nanoTime();
+            boolean cloned = false;
+            try {
+                ParseMethods.cloneRepository(repositoryName);
+                cloned = true;
+            } catch (IOException | RuntimeException e) {
+                System.err.printf("Could not clone %s: %s%n", repositoryName, e.getMessage());
+            } finally {
+                Counters.add("time.clone.nanos", System.nanoTime() - start);
+            }
+            if (!cloned) {
+                // left out of the output and the journal, so that the next run tries again
+                Counters.increment("pipeline.cloneFailures");
+                ParseMethods.deleteClone(repositoryName);
+                complete(index, repositoryName, null, null);
+                return;
+            }
+            size = sizeOf(new File(ParseMethods.getRepositoryPath(repositoryName)));
+            quota.reserve(size);
+            parseQueue.put(new Cloned(index, repositoryName, size));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ParseMethods.deleteClone(repositoryName);
+            quota.release(size);
+            complete(index, repositoryName, null, null);
+        }
+    }
+
+    private void parseLoop() {
+        try {
+            while (true) {
+                Cloned cloned = parseQueue.take();
+                if (cloned == END_OF_INPUT) return;
+                List<Pair<String, String>> methodLines = null;
+                List<int[]> signatures = null;
+                try {
+                    long start = System.nanoTime();
+                    try {
+                        SourceTree tree = ParseMethods.openSourceTree(cloned.repositoryName);
+                        methodLines = ParseMethods.extractMethods(tree, cloned.repositoryName);
+                    } finally {
+                        long parsed = System.nanoTime();
+                        Counters.add("time.parse.nanos", parsed - start);
+                        ParseMethods.deleteClone(cloned.repositoryName);
+                        quota.release(cloned.size);
+                        Counters.add("time.cleanup.nanos", System.nanoTime() - parsed);
+                    }
+                    long signing = System.nanoTime();
+                    signatures = ParseMethods.signMethods(methodLines);
+                    Counters.add("time.sign.nanos", System.nanoTime() - signing);
+                } catch (Throwable e) {
+                    // e.g. an unreadable object, or a StackOverflowError of the parser on deeply nested code;
+                    // left out of the output and the journal, so that the next run tries again
+                    System.err.printf("Could not parse %s: %s%n", cloned.repositoryName, e);
+                    Counters.increment("pipeline.parseFailures");
+                    if (e instanceof FileBudget.Exhausted) exhausted = (FileBudget.Exhausted) e;
+                    methodLines = null;
+                    signatures = null;
+                } finally {
+                    // every index has to be completed, or the writer and the window stall on it
+                    complete(cloned.index, cloned.repositoryName, methodLines, signatures);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands the methods of a repository to the writer.
+     * Whichever worker completes the next repository in list order flushes every result that is now in sequence.
+     *
+     * @param methodLines The methods of the repository, or {@code null} if it was not processed.
+     * @param signatures  The near-duplicate signatures of the methods, or {@code null}.
+     */
+    private synchronized void complete(int index, String repositoryName, List<Pair<String, String>> methodLines,
+                                       List<int[]> signatures) {
+        pending.put(index, new Extracted(repositoryName, methodLines, signatures));
+        while (pending.containsKey(nextToWrite)) {
+            Extracted result = pending.remove(nextToWrite);
+            try {
+                // once a write failed, keep draining so the run can wind down and report it
+                if (writeFailure == null && result.methodLines != null) {
+                    sink.write(result.repositoryName, result.methodLines, result.signatures);
+                    Counters.increment("pipeline.repositories");
+                    Counters.add("pipeline.methods", result.methodLines.size());
+                }
+            } catch (IOException e) {
+                writeFailure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeFailure = new InterruptedIOException("Interrupted while writing " + result.repositoryName);
+            }
+            nextToWrite++;
+            window.release();
+        }
+    }
+
+    private static long sizeOf(File directory) {
+        try {
+            return directory.exists() ? FileUtils.sizeOfDirectory(directory) : 0;
+        } catch (IllegalArgumentException | UncheckedIOException ignored) {
+            // the clone may have been partially removed
+            return 0;
+        }
+    }
+
+    private static final class Cloned {
+        final int index;
+        final String repositoryName;
+        final long size;
+
+        Cloned(int index, String repositoryName, long size) {
+            this.index = index;
+            this.repositoryName = repositoryName;
+            this.size = size;
+        }
+    }
+
+    private static final class Extracted {
+        final String repositoryName;
+        final List<Pair<String, String>> methodLines;
+        final List<int[]> signatures;
+
+        Extracted(String repositoryName, List<Pair<String, String>> methodLines, List<int[]> signatures) {
+            this.repositoryName = repositoryName;
+            this.methodLines = methodLines;
+            this.signatures = signatures;
+        }
+    }
+
+    /**
+     * Soft limit on the disk space taken by clones that are waiting to be, or are being, parsed.
+     * <br>
+     * The size of a repository is only known once it has been cloned,
+     * so the workspace may exceed the limit by at most one clone per clone worker.
+     */
+    private static final class WorkspaceQuota {
+        private final long limit;
+        private long used = 0;
+
+        WorkspaceQuota(long limit) {
+            this.limit = limit;
+        }
+
+        synchronized void awaitCapacity() throws InterruptedException {
+            while (used >= limit) wait();
+        }
+
+        synchronized void reserve(long bytes) {
+            used += bytes;
+        }
+
+        synchronized void release(long bytes) {
+            used -= bytes;
+            notifyAll();
+        }
+    }
+}
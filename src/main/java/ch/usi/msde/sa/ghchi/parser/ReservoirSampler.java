@@ -0,0 +1,89 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps a uniform random sample of at most {@code capacity} of the items offered to it.
+ * <br>
+ * Every item gets a pseudo-random priority derived from the seed and the item's key, and the sample consists of
+ * the items with the lowest priorities. The sample therefore only depends on the seed and the set of keys offered,
+ * not on the order in which the parse workers offer them, and only the sampled items are ever held in memory.
+ *
+ * @param <T> The type of the sampled items.
+ */
+class ReservoirSampler<T> {
+
+    private static final HashFunction PRIORITY_HASH = Hashing.murmur3_128();
+
+    private final int capacity;
+    private final long seed;
+    private final PriorityQueue<Entry<T>> reservoir;
+
+    ReservoirSampler(int capacity, long seed) {
+        this.capacity = capacity;
+        this.seed = seed;
+        // the entry with the highest priority is at the head, ready to be evicted
+        this.reservoir = new PriorityQueue<>(Comparator.<Entry<T>>naturalOrder().reversed());
+    }
+
+    /**
+     * @param key  Identifies the item within the sampled population, e.g. the location of a method.
+     * @param item The item itself.
+     */
+    synchronized void offer(String key, T item) {
+        if (capacity <= 0) return;
+        Entry<T> entry = new Entry<>(priority(key), key, item);
+        if (reservoir.size() < capacity) {
+            reservoir.add(entry);
+        } else if (entry.compareTo(reservoir.peek()) < 0) {
+            reservoir.poll();
+            reservoir.add(entry);
+        }
+    }
+
+    /**
+     * @return The sampled items in random order.
+     */
+    synchronized List<T> getSample() {
+        List<Entry<T>> entries = new ArrayList<>(reservoir);
+        entries.sort(Comparator.naturalOrder());
+        List<T> sample = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) sample.add(entry.item);
+        return sample;
+    }
+
+    private long priority(String key) {
+        return PRIORITY_HASH.newHasher().putLong(seed).putUnencodedChars(key).hash().asLong();
+    }
+
+    /**
+     * Derives the seed of a sub-population, e.g. a single repository, from the seed of the whole run.
+     */
+    static long deriveSeed(long seed, String name) {
+        return PRIORITY_HASH.newHasher().putLong(seed).putUnencodedChars(name).hash().asLong();
+    }
+
+    private static final class Entry<T> implements Comparable<Entry<T>> {
+        final long priority;
+        final String key;
+        final T item;
+
+        Entry(long priority, String key, T item) {
+            this.priority = priority;
+            this.key = key;
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            int byPriority = Long.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : key.compareTo(other.key);
+        }
+    }
+}
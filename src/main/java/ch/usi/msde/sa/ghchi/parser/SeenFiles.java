@@ -0,0 +1,109 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The source files that were already parsed, by the git object ids of their content, so that copies of a file in
+ * other repositories, such as vendored libraries and copied utilities, are not parsed again.
+ * <br>
+ * A file belongs to the first repository whose worker claims it, its copies would only yield the same methods. With
+ * several parse workers, which of the repositories that are parsed at the same time claims a shared file depends on
+ * timing. Once a repository is journaled, its claims are added to an {@link OffHeapLongSet} next to the CSV file,
+ * checkpointed with the size of the CSV file like the set of the {@link MethodDeduplicator}. A set that is not in sync
+ * with the journal is cleared, as it may hold files of repositories that have to be parsed again.
+ */
+class SeenFiles implements Closeable {
+
+    private static final long INITIAL_CAPACITY = 1 << 20;
+
+    private final OffHeapLongSet committed;
+    private final Map<Long, String> claims = new HashMap<>();
+    private final Map<String, List<Long>> claimsByRepository = new HashMap<>();
+
+    private SeenFiles(OffHeapLongSet committed) {
+        this.committed = committed;
+    }
+
+    /**
+     * Opens the files seen by the repositories of a CSV file, which must have been brought back to its journaled size.
+     *
+     * @param committedOffset The size of the CSV file after the last journaled repository.
+     */
+    static SeenFiles open(Path csv, long committedOffset) throws IOException {
+        OffHeapLongSet committed = OffHeapLongSet.open(csv.resolveSibling(csv.getFileName() + ".files"), INITIAL_CAPACITY);
+        if (committed.getCheckpoint() != committedOffset) {
+            if (committed.size() > 0) System.out.println("Forgetting the files seen before, they are out of sync with the journal");
+            committed.clear();
+            committed.checkpoint(committedOffset);
+        }
+        return new SeenFiles(committed);
+    }
+
+    /**
+     * Claims a file for a repository, unless a journaled repository or another repository of this run has.
+     *
+     * @return Whether the repository should parse the file.
+     */
+    boolean claim(String repositoryName, SourceFile file) throws IOException {
+        String contentId = file.getContentId();
+        long id = Long.parseUnsignedLong(contentId.substring(0, 16), 16);
+        // 0 marks an empty slot of the set
+        return claim(repositoryName, id == 0 ? 1 : id);
+    }
+
+    private synchronized boolean claim(String repositoryName, long id) {
+        if (committed.contains(id)) {
+            Counters.increment("files.seenBefore");
+            return false;
+        }
+        String owner = claims.putIfAbsent(id, repositoryName);
+        if (owner == null) {
+            claimsByRepository.computeIfAbsent(repositoryName, name -> new ArrayList<>()).add(id);
+            return true;
+        }
+        // e.g. the same file twice in a repository
+        if (owner.equals(repositoryName)) return true;
+        Counters.increment("files.seenInRun");
+        return false;
+    }
+
+    /**
+     * Records the files claimed by a repository whose methods have been journaled.
+     * They only become durable with the next {@link #checkpoint}.
+     */
+    synchronized void commit(String repositoryName) throws IOException {
+        List<Long> ids = claimsByRepository.remove(repositoryName);
+        if (ids == null) return;
+        for (long id : ids) {
+            committed.add(id);
+            claims.remove(id);
+        }
+    }
+
+    /**
+     * Gives up the claims of a repository that could not be parsed completely, so that its files are parsed elsewhere.
+     */
+    synchronized void release(String repositoryName) {
+        List<Long> ids = claimsByRepository.remove(repositoryName);
+        if (ids != null) ids.forEach(claims::remove);
+    }
+
+    synchronized void checkpoint(long offset) {
+        committed.checkpoint(offset);
+    }
+
+    synchronized long size() {
+        return committed.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        committed.close();
+    }
+}
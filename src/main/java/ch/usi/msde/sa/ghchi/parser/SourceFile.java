@@ -0,0 +1,89 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+
+/**
+ * A Java source file of a repository, either on disk or already read into memory.
+ */
+class SourceFile {
+
+    private final String key;
+    private final Path path;
+    private final String blobId;
+    private final byte[] content;
+
+    private SourceFile(String key, Path path, String blobId, byte[] content) {
+        this.key = key;
+        this.path = path;
+        this.blobId = blobId;
+        this.content = content;
+    }
+
+    /**
+     * @param key  The path of the file relative to the root of its repository, with {@code /} separators.
+     * @param path The location of the file on disk.
+     */
+    static SourceFile onDisk(String key, Path path) {
+        return new SourceFile(key, path, null, null);
+    }
+
+    /**
+     * @param key     The path of the file relative to the root of its repository, with {@code /} separators.
+     * @param blobId  The git object id of the content, if it is known.
+     * @param content The UTF-8 encoded content of the file.
+     */
+    static SourceFile inMemory(String key, String blobId, byte[] content) {
+        return new SourceFile(key, null, blobId, content);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    Optional<String> getBlobId() {
+        return Optional.ofNullable(blobId);
+    }
+
+    /**
+     * @return The git object id of the content, computed from the content unless the tree knows it already.
+     */
+    String getContentId() throws IOException {
+        return blobId != null ? blobId : computeBlobId(readAllBytes());
+    }
+
+    /**
+     * @return The git object id of a blob with the given content.
+     */
+    static String computeBlobId(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(("blob " + bytes.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            return BaseEncoding.base16().lowerCase().encode(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    long getSize() throws IOException {
+        return content != null ? content.length : Files.size(path);
+    }
+
+    byte[] readAllBytes() throws IOException {
+        return content != null ? content : Files.readAllBytes(path);
+    }
+
+    InputStream openStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(path);
+    }
+}
@@ -0,0 +1,71 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which paths of a repository hold Java sources worth parsing.
+ * The patterns are matched case insensitive against single directory and file names, unless they start with
+ * {@code (?-i)}.
+ * <br>
+ * Build output directories, such as {@code target} or {@code build}, are only excluded next to a build file, so that
+ * packages of the same name, e.g. {@code com/google/devtools/build}, are still parsed.
+ */
+class SourcePathFilter {
+
+    static final Set<String> BUILD_FILES = Set.of("pom.xml", "build.gradle", "build.gradle.kts", "build.xml");
+
+    private final Pattern excludedDirectories;
+    private final Pattern buildOutputDirectories;
+    private final Pattern excludedFiles;
+
+    SourcePathFilter(String excludedDirectories, String buildOutputDirectories, String excludedFiles) {
+        this.excludedDirectories = Pattern.compile(excludedDirectories, Pattern.CASE_INSENSITIVE);
+        this.buildOutputDirectories = Pattern.compile(buildOutputDirectories, Pattern.CASE_INSENSITIVE);
+        this.excludedFiles = Pattern.compile(excludedFiles, Pattern.CASE_INSENSITIVE);
+    }
+
+    boolean isExcludedDirectory(String name) {
+        return excludedDirectories.matcher(name).matches();
+    }
+
+    /**
+     * @return Whether a directory of this name is excluded if its parent directory holds a build file.
+     */
+    boolean isBuildOutputDirectory(String name) {
+        return buildOutputDirectories.matcher(name).matches();
+    }
+
+    static boolean isBuildFile(String name) {
+        return BUILD_FILES.contains(name);
+    }
+
+    boolean isJavaFile(String name) {
+        return name.endsWith(".java");
+    }
+
+    boolean isExcludedFile(String name) {
+        return excludedFiles.matcher(name).matches();
+    }
+
+    /**
+     * Checks a whole path relative to the root of a repository, e.g. one listed from a git tree.
+     *
+     * @param hasBuildFile Whether a directory, given relative to the root and {@code ""} for the root itself,
+     *                     holds a build file.
+     */
+    boolean accepts(String relativePath, Predicate<String> hasBuildFile) {
+        String[] names = relativePath.split("/");
+        int start = 0;
+        for (int i = 0; i < names.length - 1; i++) {
+            if (isExcludedDirectory(names[i])) return false;
+            if (isBuildOutputDirectory(names[i]) && hasBuildFile.test(relativePath.substring(0, Math.max(start - 1, 0)))) {
+                return false;
+            }
+            start += names[i].length() + 1;
+        }
+        String name = names[names.length - 1];
+        return isJavaFile(name) && !isExcludedFile(name);
+    }
+}
@@ -0,0 +1,18 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The Java source files of a repository, wherever they are read from.
+ */
+interface SourceTree {
+
+    /**
+     * Reads the source files whose keys are accepted, and hands them over in chunks.
+     * The consumer may still be parsing a chunk while the next one is being read.
+     */
+    void read(Predicate<String> accept, Consumer<List<SourceFile>> chunks) throws IOException, InterruptedException;
+}
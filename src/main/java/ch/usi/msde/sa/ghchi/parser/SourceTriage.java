@@ -0,0 +1,168 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decides from the bytes of a source file, before it is parsed, whether it can contain methods worth extracting.
+ * <br>
+ * Files are rejected for one of the reasons below, which are counted under {@code triage.<reason>}. The checks are
+ * lexical and only reject files that certainly have no method bodies, except for the limit on the size of a file
+ * and the markers of generated code, which are choices and can be configured.
+ */
+class SourceTriage {
+
+    static final String SIZE = "size";
+    static final String DESCRIPTOR = "descriptor";
+    static final String GENERATED = "generated";
+    static final String NO_METHOD_BODIES = "noMethodBodies";
+
+    /**
+     * Generated files announce themselves in their header, the rest of the file is not searched.
+     */
+    private static final int HEADER_BYTES = 4096;
+    private static final String[] GENERATED_MARKERS = {
+            "DO NOT EDIT", "Do not edit this file", "Code generated by", "This file was generated by",
+            "This file is generated by", "Generated By:JavaCC", "Generated by the protocol buffer compiler",
+            "Autogenerated by Thrift", "@Generated", "@javax.annotation.Generated",
+            "@javax.annotation.processing.Generated", "@generated",
+    };
+
+    private final long maxFileBytes;
+    private final boolean skipGenerated;
+
+    /**
+     * @param maxFileBytes  Files larger than this are rejected without being read.
+     * @param skipGenerated Whether to reject files with a marker of generated code in their header.
+     */
+    SourceTriage(long maxFileBytes, boolean skipGenerated) {
+        this.maxFileBytes = maxFileBytes;
+        this.skipGenerated = skipGenerated;
+    }
+
+    /**
+     * @return The reason to reject the file without reading it, or {@code null} if it has to be read.
+     */
+    String rejectBeforeReading(String key, long size) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        if (name.equals("package-info.java") || name.equals("module-info.java")) return DESCRIPTOR;
+        if (size > maxFileBytes) return SIZE;
+        return null;
+    }
+
+    /**
+     * @return The reason to reject the file, or {@code null} if it has to be parsed.
+     */
+    String reject(byte[] content) {
+        if (skipGenerated && isGenerated(content)) return GENERATED;
+        if (!mayContainMethodBodies(content)) return NO_METHOD_BODIES;
+        return null;
+    }
+
+    private static boolean isGenerated(byte[] content) {
+        String header = new String(content, 0, Math.min(content.length, HEADER_BYTES), StandardCharsets.ISO_8859_1);
+        for (String marker : GENERATED_MARKERS) {
+            for (int at = header.indexOf(marker); at >= 0; at = header.indexOf(marker, at + 1)) {
+                int end = at + marker.length();
+                // e.g. @GeneratedValue is not a marker
+                if (marker.charAt(0) != '@' || end == header.length() || !Character.isJavaIdentifierPart(header.charAt(end))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks for a closing parenthesis followed by an opening brace or by {@code throws}, with nothing but whitespace,
+     * comments and array brackets in between, outside of comments and literals.
+     * Every method body is preceded by one, and most files without any method body have none.
+     */
+    static boolean mayContainMethodBodies(byte[] content) {
+        // unicode escapes are translated before the source is tokenized, they can hide any character
+        if (containsUnicodeEscape(content)) return true;
+        int length = content.length;
+        boolean afterParameters = false;
+        int i = 0;
+        while (i < length) {
+            byte c = content[i];
+            byte next = i + 1 < length ? content[i + 1] : 0;
+            if (c == '/' && next == '/') {
+                i = skipLine(content, i + 2);
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(content, i + 2);
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(content, i);
+                afterParameters = false;
+            } else if (c == ')') {
+                afterParameters = true;
+                i++;
+            } else if (c == '{') {
+                if (afterParameters) return true;
+                i++;
+            } else if (afterParameters && startsWith(content, i, "throws")) {
+                return true;
+            } else {
+                if (!isWhitespace(c) && c != '[' && c != ']') afterParameters = false;
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsUnicodeEscape(byte[] content) {
+        for (int i = 0; i + 1 < content.length; i++) {
+            if (content[i] == '\\' && content[i + 1] == 'u') return true;
+        }
+        return false;
+    }
+
+    private static int skipLine(byte[] content, int from) {
+        int i = from;
+        while (i < content.length && content[i] != '\n' && content[i] != '\r') i++;
+        return i;
+    }
+
+    private static int skipBlockComment(byte[] content, int from) {
+        for (int i = from; i + 1 < content.length; i++) {
+            if (content[i] == '*' && content[i + 1] == '/') return i + 2;
+        }
+        return content.length;
+    }
+
+    /**
+     * Skips a string, character or text block literal, or what is left of it if it is not terminated.
+     */
+    private static int skipLiteral(byte[] content, int from) {
+        byte quote = content[from];
+        boolean textBlock = quote == '"' && startsWith(content, from, "\"\"\"");
+        int i = from + (textBlock ? 3 : 1);
+        while (i < content.length) {
+            byte c = content[i];
+            if (c == '\\') {
+                i += 2;
+            } else if (textBlock) {
+                if (startsWith(content, i, "\"\"\"")) return i + 3;
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return content.length;
+    }
+
+    private static boolean startsWith(byte[] content, int from, String prefix) {
+        if (from + prefix.length() > content.length) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (content[from + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -16,28 +16,28 @@ public class StringProcessors {
      * Removes all content between {@code <pre>} tags.
      * @see <a href="https://www.debuggex.com/r/gjOLqSaYf1muJHlk">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> REMOVE_PREFORMATTED_TEXT =
+    static final UnaryOperator<String> REMOVE_PREFORMATTED_TEXT =
             text -> text.replaceAll("(?:\\s\\*\\s)*<pre>[\\s\\S]*?</pre>", " ");
 
     /**
      * Extracts the reference target names contained within Javadoc references.
      * @see <a href="https://www.debuggex.com/r/3HXy0yv7hLKJpKS4">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> EXTRACT_REFERENCE_CONTENT =
+    static final UnaryOperator<String> EXTRACT_REFERENCE_CONTENT =
             text -> text.replaceAll("\\{@(?:value|link(?:plain)?)\\s(?:.*?#)?(\\w+).*?}", "$1");
 
     /**
      * Extracts the value contained within the <code>code</code>, <code>literal</code> and <code>serial</code> tags.
      * @see <a href="https://www.debuggex.com/r/fl-hkGAGwiZHsNiJ">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> EXTRACT_LITERAL_CONTENT =
+    static final UnaryOperator<String> EXTRACT_LITERAL_CONTENT =
             text -> text.replaceAll("\\{@(?:code|literal|serial(?:Data|Field)?|docRoot|inheritDoc)\\s?([^}]*)}", "$1");
 
     /**
      * Removes all HTML tags in a String.
      * @see <a href="https://www.debuggex.com/r/_gjB-CYKny3xrWl9">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> REMOVE_HTML_TAGS = text -> text.replaceAll("<[^>]*>", " ");
+    static final UnaryOperator<String> REMOVE_HTML_TAGS = text -> text.replaceAll("<[^>]*>", " ");
 
     /**
      * Removes all Javadoc metadata information from a string.
@@ -45,48 +45,51 @@ public class StringProcessors {
      * This includes the likes of {@code @param, @return, @throws,} etc.
      * @see <a href="https://www.debuggex.com/r/mZdM-K4StPe2QuO-">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> REMOVE_METADATA = text -> text.split("\\*\\s*@.*")[0];
+    static final UnaryOperator<String> REMOVE_METADATA = text -> text.split("\\*\\s*@.*")[0];
 
     /**
      * Removes all <code>/**</code>, <code>*</code> and <code>*&#47;</code> characters from a String.
      * @see <a href="https://www.debuggex.com/r/jqdIQyAOtZRs8NbF">Regex visualisation</a>
      */
-    private static final UnaryOperator<String> REMOVE_FORMATTING = text -> text.replaceAll("(?:/\\*)?\\*\\s?/?", " ");
+    static final UnaryOperator<String> REMOVE_FORMATTING = text -> text.replaceAll("(?:/\\*)?\\*\\s?/?", " ");
 
     /**
      * Removes all non-ASCII characters from a String.
      */
-    private static final UnaryOperator<String> RETAIN_ASCII = text -> text.replaceAll("[^\\p{ASCII}]", "");
+    static final UnaryOperator<String> RETAIN_ASCII = text -> text.replaceAll("[^\\p{ASCII}]", "");
 
     /**
      * Extracts the fist sentence from a String.
      * <br>
      * Although not exactly a perfect sentence matcher, it is simple and serves us well.
      */
-    private static final UnaryOperator<String> GET_FIRST_SENTENCE = text -> text.split("[.!?]")[0];
+    static final UnaryOperator<String> GET_FIRST_SENTENCE = text -> text.split("[.!?]")[0];
 
     /**
      * Removes all punctuation symbols from a String.
      */
-    private static final UnaryOperator<String> REMOVE_PUNCTUATION = text -> text.replaceAll("[^A-Za-z0-9\\s]", "");
+    static final UnaryOperator<String> REMOVE_PUNCTUATION = text -> text.replaceAll("[^A-Za-z0-9\\s]", "");
 
     /**
      * @see StringUtils#normalizeSpace(String)
      */
-    private static final UnaryOperator<String> NORMALIZE_SPACE = StringUtils::normalizeSpace;
+    static final UnaryOperator<String> NORMALIZE_SPACE = StringUtils::normalizeSpace;
 
     /**
      * @see String#trim()
      */
-    private static final UnaryOperator<String> TRIM = String::trim;
+    static final UnaryOperator<String> TRIM = String::trim;
 
     /**
      * Adds a separator tag to a String.
      * <br>
      * If the String is empty replace it with <code>null</code> instead.
      */
-    private static final UnaryOperator<String> ADD_SEPARATOR = text -> (!text.isEmpty()) ? text + " <SEP> " : null;
+    static final UnaryOperator<String> ADD_SEPARATOR = text -> (!text.isEmpty()) ? text + " <SEP> " : null;
 
+    /**
+     * The reference definition of Javadoc processing, which {@link JavadocNormalizer} reproduces in a single pass.
+     */
     private static final Function<String, String> JAVADOC_STRING_PROCESSOR =
             REMOVE_PREFORMATTED_TEXT
                     .andThen(EXTRACT_REFERENCE_CONTENT)
@@ -101,13 +104,110 @@ public class StringProcessors {
                     .andThen(TRIM)
                     .andThen(ADD_SEPARATOR);
 
+    /**
+     * The reference definition of method processing, which {@link #retainAsciiAndNormalizeSpace} reproduces in a single pass.
+     */
     private static final Function<String, String> METHOD_STRING_PROCESSOR = RETAIN_ASCII.andThen(NORMALIZE_SPACE);
 
+    /**
+     * Bodies longer than this are processed in a buffer of their own, rather than growing the reused one.
+     */
+    private static final int MAX_REUSED_BUFFER = 1 << 20;
+
+    private static final ThreadLocal<char[]> METHOD_BUFFER = ThreadLocal.withInitial(() -> new char[4096]);
+
     public static String processJavadocString(String text) {
+        return JavadocNormalizer.get().normalize(text);
+    }
+
+    /**
+     * Processes a Javadoc comment with the chain of regex stages, slower but identical to {@link #processJavadocString}.
+     */
+    static String processJavadocStringWithRegexes(String text) {
         return JAVADOC_STRING_PROCESSOR.apply(text);
     }
 
     public static String processMethodString(String text) {
+        return retainAsciiAndNormalizeSpace(text);
+    }
+
+    /**
+     * Processes a method with the chain of stages, slower but identical to {@link #processMethodString}.
+     */
+    static String processMethodStringWithRegexes(String text) {
         return METHOD_STRING_PROCESSOR.apply(text);
     }
+
+    /**
+     * Removes non-ASCII characters and normalizes whitespace like {@link StringUtils#normalizeSpace(String)},
+     * compacting the characters in place in a reused buffer.
+     * <br>
+     * The ASCII prefix of the text, usually all of it, is found with a block-wise scan, so that the compaction does
+     * not have to check every character for non-ASCII values. Text that needs no changes is returned as it is.
+     */
+    private static String retainAsciiAndNormalizeSpace(String text) {
+        int length = text.length();
+        if (length == 0) return text;
+        char[] chars = METHOD_BUFFER.get();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            if (chars.length <= MAX_REUSED_BUFFER) METHOD_BUFFER.set(chars);
+        }
+        text.getChars(0, length, chars, 0);
+
+        // only text with non-ASCII characters, which is rare, needs an extra pass to drop them
+        int kept = asciiPrefixLength(chars, length);
+        for (int i = kept; i < length; i++) {
+            if (chars[i] <= 0x7F) chars[kept++] = chars[i];
+        }
+
+        int count = 0;
+        boolean started = false;
+        boolean space = false;
+        boolean changed = kept < length;
+        for (int i = 0; i < kept; i++) {
+            char c = chars[i];
+            if (c <= ' ' && isWhitespace(c)) {
+                // a run of whitespace becomes a single space, unless it leads or trails
+                space = started;
+                changed |= c != ' ';
+            } else {
+                if (space) chars[count++] = ' ';
+                chars[count++] = c;
+                started = true;
+                space = false;
+            }
+        }
+
+        // the final String#trim of normalizeSpace, which also strips control characters
+        int start = 0;
+        int end = count;
+        while (start < end && chars[start] <= ' ') start++;
+        while (end > start && chars[end - 1] <= ' ') end--;
+        if (!changed && start == 0 && end == length) return text;
+        return new String(chars, start, end - start);
+    }
+
+    /**
+     * @return The length of the longest prefix of {@code chars} without non-ASCII characters.
+     */
+    private static int asciiPrefixLength(char[] chars, int length) {
+        int i = 0;
+        // OR-reduces blocks of chars, which the JIT compiles into wide loads, and locates the char in the first
+        // block that has a bit above the ASCII range
+        for (; i + 16 <= length; i += 16) {
+            int bits = 0;
+            for (int j = 0; j < 16; j++) bits |= chars[i + j];
+            if ((bits & 0xFF80) != 0) break;
+        }
+        while (i < length && chars[i] <= 0x7F) i++;
+        return i;
+    }
+
+    /**
+     * {@link Character#isWhitespace(char)} for ASCII characters.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r') || (c >= '\u001C' && c <= '\u001F');
+    }
 }
@@ -0,0 +1,210 @@
+package ch.usi.msde.sa.ghchi.parser;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of whole runs offline, against a farm of generated local repositories.
+ * <br>
+ * The farm consists of bare git repositories whose Java files are copies of the {@code scanner/} fixtures, spread
+ * over packages, with renamed methods and changed integer literals. It is generated once per set of parameters and
+ * reused by later measurements. The run itself clones from the farm through {@code file://} remotes in a separate
+ * JVM, started with the class path and JVM options of the harness, so that its peak resident set size is not
+ * inflated by generating the farm. The run's own options, e.g. {@code -Dghchi.parseWorkers}, are passed on as well.
+ * <pre>
+ * java -Dghchi.parseWorkers=4 -cp ... ch.usi.msde.sa.ghchi.parser.ThroughputHarness \
+ *     [-repositories 100] [-files 40] [-seed 0] [-fixtures scanner] work-directory
+ * </pre>
+ */
+class ThroughputHarness {
+
+    private static final String CRAWL = "crawl";
+    private static final String OWNER = "farm";
+
+    private static final String[][] STAGES = {
+            {"clone", "time.clone.nanos"},
+            {"parse", "time.parse.nanos"},
+            {"cleanup", "time.cleanup.nanos"},
+            {"sign", "time.sign.nanos"},
+            {"dedup", "time.dedup.nanos"},
+            {"write", "time.write.nanos"},
+            {"commit", "time.commit.nanos"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals(CRAWL)) {
+            crawl(Path.of(args[1]));
+            return;
+        }
+        int repositories = 100;
+        int files = 40;
+        long seed = 0;
+        Path fixtures = Path.of("scanner");
+        Path work = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-repositories")) repositories = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-files")) files = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed")) seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-fixtures")) fixtures = Path.of(args[++i]);
+            else work = Path.of(args[i]);
+        }
+        if (work == null) {
+            System.err.println("Usage: ThroughputHarness [-repositories n] [-files n] [-seed n] [-fixtures directory] work-directory");
+            System.exit(2);
+        }
+        work = work.toAbsolutePath();
+        generateFarm(work, repositories, files, seed, fixtures.toAbsolutePath());
+        System.exit(startCrawl(work));
+    }
+
+    /**
+     * Generates the farm and its repository list, unless the farm was already generated with the same parameters.
+     */
+    private static void generateFarm(Path work, int repositories, int files, long seed, Path fixtures) throws IOException, InterruptedException {
+        Path remotes = work.resolve("remotes");
+        Path description = work.resolve("farm.txt");
+        String parameters = String.format("repositories %d files %d seed %d fixtures %s%n", repositories, files, seed, fixtures);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < repositories; i++) names.add(String.format("%s/repo-%05d", OWNER, i));
+
+        if (Files.exists(description) && Files.readString(description).equals(parameters)) {
+            System.out.println("Reusing the farm in " + remotes);
+        } else {
+            Files.deleteIfExists(description);
+            FileUtils.deleteDirectory(remotes.toFile());
+            List<Path> sources;
+            try (Stream<Path> listing = Files.list(fixtures)) {
+                sources = listing.filter(file -> file.getFileName().toString().endsWith(".java")).sorted().collect(Collectors.toList());
+            }
+            if (sources.isEmpty()) throw new IOException("No fixtures in " + fixtures);
+            List<String> contents = new ArrayList<>();
+            for (Path source : sources) contents.add(Files.readString(source, StandardCharsets.UTF_8));
+
+            Random random = new Random(seed);
+            long start = System.nanoTime();
+            for (int i = 0; i < repositories; i++) {
+                Path tree = work.resolve("generate").resolve(names.get(i));
+                FileUtils.deleteDirectory(tree.toFile());
+                Files.createDirectories(tree);
+                for (int j = 0; j < files; j++) {
+                    CompilationUnit unit = StaticJavaParser.parse(contents.get(j % contents.size()));
+                    String packageName = String.format("%s.r%d.p%d", OWNER, i, j / contents.size());
+                    unit.setPackageDeclaration(packageName);
+                    mutate(unit, random);
+                    Path file = tree.resolve("src").resolve(packageName.replace('.', '/'))
+                            .resolve(sources.get(j % sources.size()).getFileName().toString());
+                    Files.createDirectories(file.getParent());
+                    Files.writeString(file, unit.toString(), StandardCharsets.UTF_8);
+                }
+                createRepository(tree, remotes.resolve(names.get(i) + ".git"));
+                FileUtils.deleteDirectory(tree.toFile());
+            }
+            FileUtils.deleteDirectory(work.resolve("generate").toFile());
+            Files.writeString(description, parameters);
+            System.out.printf("Generated %d repositories of %d files in %.1f s%n",
+                    repositories, files, (System.nanoTime() - start) / 1e9);
+        }
+        Files.write(work.resolve("repolist.txt"), names, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes the copy of a fixture differ from the other copies, without changing its structure.
+     */
+    private static void mutate(CompilationUnit unit, Random random) {
+        for (MethodDeclaration method : unit.findAll(MethodDeclaration.class)) {
+            method.setName(method.getNameAsString() + "V" + random.nextInt(1000));
+        }
+        for (IntegerLiteralExpr literal : unit.findAll(IntegerLiteralExpr.class)) {
+            literal.setValue(String.valueOf(random.nextInt(1000)));
+        }
+    }
+
+    private static void createRepository(Path tree, Path remote) throws IOException, InterruptedException {
+        File directory = tree.toFile();
+        Git.run(directory, "init", "-q");
+        Git.run(directory, "add", "-A");
+        Git.run(directory, "-c", "user.name=farm", "-c", "user.email=farm@localhost", "commit", "-q", "-m", "Generated");
+        Files.createDirectories(remote.getParent());
+        Git.run(directory, "clone", "-q", "--bare", tree.toString(), remote.toString());
+    }
+
+    /**
+     * Starts a run over the farm in a separate JVM and waits for it.
+     *
+     * @return The exit status of the run.
+     */
+    private static int startCrawl(Path work) throws IOException, InterruptedException {
+        Path csv = work.resolve("methods.csv");
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(csv.resolveSibling(csv.getFileName() + ".journal"));
+        Files.deleteIfExists(csv.resolveSibling(csv.getFileName() + ".methods"));
+        FileUtils.deleteDirectory(work.resolve("clones").toFile());
+
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-Dghchi.remoteUrl=file://" + work.resolve("remotes") + "/%s.git");
+        command.add("-Dghchi.repositoryList=" + work.resolve("repolist.txt"));
+        command.add("-Dghchi.cloneDirectory=" + work.resolve("clones"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ThroughputHarness.class.getName());
+        command.add(CRAWL);
+        command.add(work.toString());
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    /**
+     * Runs over the farm in this JVM, and reports the throughput of the run.
+     */
+    private static void crawl(Path work) throws Exception {
+        long start = System.nanoTime();
+        ParseMethods.main(new String[]{work.resolve("methods.csv").toString()});
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long repositories = Counters.get("pipeline.repositories");
+        System.out.println();
+        System.out.printf("%-20s %10.2f s%n", "wall time", seconds);
+        System.out.printf("%-20s %,10d %12.2f/s%n", "repositories", repositories, repositories / seconds);
+        System.out.printf("%-20s %,10d %12.2f/s%n", "files", Counters.get("parse.files"), Counters.get("parse.files") / seconds);
+        System.out.printf("%-20s %,10d %12.2f/s%n", "methods", Counters.get("pipeline.methods"), Counters.get("pipeline.methods") / seconds);
+        long peakKiB = peakResidentSetKiB();
+        System.out.printf("%-20s %10s%n", "peak RSS", peakKiB < 0 ? "n/a" : String.format("%,d MiB", peakKiB / 1024));
+        System.out.println("time per stage, summed over workers:");
+        for (String[] stage : STAGES) {
+            double stageSeconds = Counters.get(stage[1]) / 1e9;
+            System.out.printf("  %-18s %10.2f s %10.2f ms/repository%n",
+                    stage[0], stageSeconds, repositories == 0 ? 0 : stageSeconds * 1000 / repositories);
+        }
+    }
+
+    /**
+     * @return The peak resident set size of this JVM, or -1 where {@code /proc} is not available.
+     */
+    private static long peakResidentSetKiB() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                // VmHWM:    123456 kB
+                if (line.startsWith("VmHWM:")) return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // not on Linux
+        }
+        return -1;
+    }
+}